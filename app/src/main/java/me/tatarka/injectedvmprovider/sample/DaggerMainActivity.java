@@ -6,24 +6,26 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 
 import me.tatarka.injectedvmprovider.InjectedViewModelProvider;
+import me.tatarka.injectedvmprovider.dagger.RegistryViewModelProvider;
 import me.tatarka.injectedvmprovider.sample.dagger.DaggerMainActivityComponent;
+import me.tatarka.injectedvmprovider.sample.dagger.MainActivityComponent;
+import me.tatarka.injectedvmprovider.sample.dagger.MainViewModels_Registry;
 
 public class DaggerMainActivity extends AppCompatActivity {
 
-    @Inject
-    Provider<MainViewModel> vmProvider;
     @Inject
     ViewModelWithFactory.Factory vmFactory;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        DaggerMainActivityComponent.create().inject(this);
+        MainActivityComponent component = DaggerMainActivityComponent.create();
+        component.inject(this);
         InjectedViewModelProvider provider = new InjectedViewModelProvider(this, getIntent().getExtras());
-        MainViewModel vm1 = provider.get(vmProvider);
+        MainViewModel vm1 = new RegistryViewModelProvider(provider, new MainViewModels_Registry(component))
+                .get(MainViewModel.class);
         ViewModelWithFactory vm2 = provider.get(vmFactory, ViewModelWithFactory.Factory::create);
         setContentView(R.layout.activity_main);
         TextView textView1 = findViewById(R.id.text1);
@@ -5,6 +5,9 @@ import android.util.Log;
 
 import javax.inject.Inject;
 
+import me.tatarka.injectedvmprovider.InjectedViewModel;
+
+@InjectedViewModel
 public class MainViewModel extends ViewModel {
     private static final String TAG = "MainViewModel";
     private final Source source;
@@ -27,7 +27,7 @@ public class ToothpickMainActivity extends AppCompatActivity {
         scope.installModules(new MainModule());
         Toothpick.inject(this, scope);
         InjectedViewModelProvider provider = new InjectedViewModelProvider(this, getIntent().getExtras());
-        MainViewModel vm1 = provider.get(vmProvider);
+        MainViewModel vm1 = MainViewModel_Injected.get(provider, vmProvider);
         ViewModelWithFactory vm2 = provider.get(vmFactory, ViewModelWithFactory.Factory::create);
         setContentView(R.layout.activity_main);
         TextView textView1 = findViewById(R.id.text1);
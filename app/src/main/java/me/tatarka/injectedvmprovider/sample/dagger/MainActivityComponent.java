@@ -5,6 +5,6 @@ import me.tatarka.injectedvmprovider.sample.DaggerMainActivity;
 import me.tatarka.injectedvmprovider.sample.KotlinDaggerMainActivity;
 
 @Component(modules = MainModule.class)
-public interface MainActivityComponent {
+public interface MainActivityComponent extends MainViewModels {
     void inject(DaggerMainActivity activity);
 }
@@ -0,0 +1,9 @@
+package me.tatarka.injectedvmprovider.sample.dagger;
+
+import me.tatarka.injectedvmprovider.dagger.ViewModelRegistry;
+import me.tatarka.injectedvmprovider.sample.MainViewModel;
+
+@ViewModelRegistry
+public interface MainViewModels {
+    MainViewModel mainViewModel();
+}
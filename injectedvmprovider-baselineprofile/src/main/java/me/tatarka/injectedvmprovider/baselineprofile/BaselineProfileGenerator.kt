@@ -0,0 +1,40 @@
+package me.tatarka.injectedvmprovider.baselineprofile
+
+import android.content.Intent
+import androidx.benchmark.macro.junit4.BaselineProfileRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Collects the methods the sample app runs while obtaining its ViewModels, both when they're
+ * created and when they're retained across a configuration change.
+ */
+@RunWith(AndroidJUnit4::class)
+class BaselineProfileGenerator {
+
+    @get:Rule
+    val baselineProfileRule = BaselineProfileRule()
+
+    @Test
+    fun generate() = baselineProfileRule.collectBaselineProfile(packageName = PACKAGE_NAME) {
+        for (activity in ACTIVITIES) {
+            pressHome()
+            startActivityAndWait(Intent().setClassName(PACKAGE_NAME, activity))
+            device.setOrientationLeft()
+            device.waitForIdle()
+            device.setOrientationNatural()
+            device.waitForIdle()
+        }
+    }
+
+    companion object {
+        private const val PACKAGE_NAME = "me.tatarka.injectedviewmodelprovider.app"
+
+        private val ACTIVITIES = listOf(
+            "me.tatarka.injectedvmprovider.sample.DaggerMainActivity",
+            "me.tatarka.injectedvmprovider.sample.ToothpickMainActivity"
+        )
+    }
+}
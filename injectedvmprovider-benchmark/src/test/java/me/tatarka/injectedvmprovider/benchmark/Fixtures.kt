@@ -0,0 +1,86 @@
+package me.tatarka.injectedvmprovider.benchmark
+
+import android.os.Bundle
+import androidx.arch.core.executor.ArchTaskExecutor
+import androidx.arch.core.executor.TaskExecutor
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleRegistry
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelProvider
+import androidx.lifecycle.ViewModelStore
+import androidx.savedstate.SavedStateRegistry
+import androidx.savedstate.SavedStateRegistryController
+import androidx.savedstate.SavedStateRegistryOwner
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.SavedStateFactory
+import javax.inject.Provider
+
+class TestViewModel(val arg: String = "") : ViewModel()
+
+class TestSavedStateViewModel(val handle: SavedStateHandle) : ViewModel()
+
+object TestViewModelProvider : Provider<TestViewModel> {
+    override fun get() = TestViewModel("arg")
+}
+
+object TestViewModelFactory {
+    fun create(arg: String) = TestViewModel(arg)
+}
+
+object TestSavedStateViewModelFactory {
+    fun create(handle: SavedStateHandle) = TestSavedStateViewModel(handle)
+}
+
+object TestViewModelProviderFactory : ViewModelProvider.Factory {
+    override fun <T : ViewModel> create(modelClass: Class<T>): T {
+        @Suppress("UNCHECKED_CAST")
+        return TestViewModel("arg") as T
+    }
+}
+
+/**
+ * A [SavedStateRegistryOwner] that can be saved and restored outside of an activity.
+ */
+class SavedState(savedState: Bundle? = null) : SavedStateRegistryOwner {
+    private val lifecycleRegistry = LifecycleRegistry(this)
+    private val controller = SavedStateRegistryController.create(this)
+
+    init {
+        controller.performRestore(savedState)
+        lifecycleRegistry.currentState = Lifecycle.State.CREATED
+    }
+
+    fun save() = Bundle().apply {
+        controller.performSave(this)
+    }
+
+    override fun getLifecycle(): Lifecycle = lifecycleRegistry
+
+    override fun getSavedStateRegistry(): SavedStateRegistry = controller.savedStateRegistry
+}
+
+/**
+ * Treats the benchmark thread as the main thread, there is no looper on the host JVM.
+ */
+fun useBenchmarkThreadAsMainThread() {
+    ArchTaskExecutor.getInstance().setDelegate(object : TaskExecutor() {
+        override fun executeOnDiskIO(runnable: Runnable) = runnable.run()
+        override fun postToMainThread(runnable: Runnable) = runnable.run()
+        override fun isMainThread() = true
+    })
+}
+
+/**
+ * Returns the saved state of an owner with a [SavedStateHandle] under the given key that holds the
+ * given number of entries.
+ */
+fun savedStateWith(key: String, entries: Int): Bundle {
+    val savedState = SavedState()
+    val vm = InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        .get(key, SavedStateFactory { TestSavedStateViewModel(it) })
+    for (i in 0 until entries) {
+        vm.handle["key$i"] = "value$i"
+    }
+    return savedState.save()
+}
@@ -0,0 +1,169 @@
+package me.tatarka.injectedvmprovider.benchmark
+
+import androidx.lifecycle.ViewModelProvider
+import androidx.lifecycle.ViewModelStore
+import androidx.savedstate.SavedStateRegistry
+import me.tatarka.injectedvmprovider.FactoryCreator
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.SavedStateFactory
+import me.tatarka.injectedvmprovider.SavedStateFactoryCreator
+import me.tatarka.injectedvmprovider.ViewModelKey
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+private val creator = FactoryCreator<TestViewModelFactory, TestViewModel> { it.create("arg") }
+private val savedStateCreator =
+    SavedStateFactoryCreator<TestSavedStateViewModelFactory, TestSavedStateViewModel> { factory, handle -> factory.create(handle) }
+private val savedStateFactory = SavedStateFactory { TestSavedStateViewModel(it) }
+
+/**
+ * Every [InjectedViewModelProvider.get] overload when the ViewModel is already in the store,
+ * compared to androidx's [ViewModelProvider].
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class GetHitBenchmark {
+
+    private lateinit var provider: InjectedViewModelProvider
+    private lateinit var androidxProvider: ViewModelProvider
+
+    @Setup
+    fun setup() {
+        useBenchmarkThreadAsMainThread()
+        val store = ViewModelStore()
+        provider = InjectedViewModelProvider(store, SavedState().savedStateRegistry, null)
+        androidxProvider = ViewModelProvider(store, TestViewModelProviderFactory)
+        provider.get(TestViewModelProvider)
+        provider.get(TestViewModel::class.java, TestViewModelProvider)
+        provider.get("key", TestViewModelProvider)
+        provider.get(TestViewModelFactory, creator)
+        provider.get("factoryKey", TestViewModelFactory, creator)
+        provider.get(TestSavedStateViewModel::class.java, savedStateFactory)
+        provider.get("savedStateKey", savedStateFactory)
+        provider.get(TestSavedStateViewModelFactory, savedStateCreator)
+        provider.get("savedStateFactoryKey", TestSavedStateViewModelFactory, savedStateCreator)
+    }
+
+    @Benchmark
+    fun provider() = provider.get(TestViewModelProvider)
+
+    @Benchmark
+    fun classProvider() = provider.get(TestViewModel::class.java, TestViewModelProvider)
+
+    @Benchmark
+    fun keyProvider() = provider.get("key", TestViewModelProvider)
+
+    @Benchmark
+    fun factoryCreator() = provider.get(TestViewModelFactory, creator)
+
+    @Benchmark
+    fun keyFactoryCreator() = provider.get("factoryKey", TestViewModelFactory, creator)
+
+    @Benchmark
+    fun classSavedStateFactory() = provider.get(TestSavedStateViewModel::class.java, savedStateFactory)
+
+    @Benchmark
+    fun keySavedStateFactory() = provider.get("savedStateKey", savedStateFactory)
+
+    @Benchmark
+    fun savedStateFactoryCreator() = provider.get(TestSavedStateViewModelFactory, savedStateCreator)
+
+    @Benchmark
+    fun keySavedStateFactoryCreator() = provider.get("savedStateFactoryKey", TestSavedStateViewModelFactory, savedStateCreator)
+
+    @Benchmark
+    fun androidxViewModelProvider() = androidxProvider.get(TestViewModel::class.java)
+
+    @Benchmark
+    fun androidxViewModelProviderKey() = androidxProvider.get("key", TestViewModel::class.java)
+}
+
+/**
+ * Every [InjectedViewModelProvider.get] overload when the ViewModel has to be created, compared to
+ * androidx's [ViewModelProvider]. Each invocation creates a new store and provider, which is
+ * included in the time, as a per-invocation setup would cost more than what's measured. The
+ * [SavedStateHandle][androidx.lifecycle.SavedStateHandle] of a ViewModel is unregistered again so
+ * the registry can be reused.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class GetMissBenchmark {
+
+    private lateinit var registry: SavedStateRegistry
+    private lateinit var classKey: String
+    private lateinit var factoryKey: String
+
+    @Setup
+    fun setup() {
+        useBenchmarkThreadAsMainThread()
+        registry = SavedState().savedStateRegistry
+        classKey = ViewModelKey.of(TestSavedStateViewModel::class.java).key
+        factoryKey = classKey.substringBefore(':') + ":" + TestSavedStateViewModelFactory::class.java.canonicalName
+    }
+
+    private fun newProvider() = InjectedViewModelProvider(ViewModelStore(), registry, null)
+
+    @Benchmark
+    fun provider() = newProvider().get(TestViewModelProvider)
+
+    @Benchmark
+    fun classProvider() = newProvider().get(TestViewModel::class.java, TestViewModelProvider)
+
+    @Benchmark
+    fun keyProvider() = newProvider().get("key", TestViewModelProvider)
+
+    @Benchmark
+    fun factoryCreator() = newProvider().get(TestViewModelFactory, creator)
+
+    @Benchmark
+    fun keyFactoryCreator() = newProvider().get("factoryKey", TestViewModelFactory, creator)
+
+    @Benchmark
+    fun classSavedStateFactory(): TestSavedStateViewModel {
+        val vm = newProvider().get(TestSavedStateViewModel::class.java, savedStateFactory)
+        registry.unregisterSavedStateProvider(classKey)
+        return vm
+    }
+
+    @Benchmark
+    fun keySavedStateFactory(): TestSavedStateViewModel {
+        val vm = newProvider().get("savedStateKey", savedStateFactory)
+        registry.unregisterSavedStateProvider("savedStateKey")
+        return vm
+    }
+
+    @Benchmark
+    fun savedStateFactoryCreator(): TestSavedStateViewModel {
+        val vm = newProvider().get(TestSavedStateViewModelFactory, savedStateCreator)
+        registry.unregisterSavedStateProvider(factoryKey)
+        return vm
+    }
+
+    @Benchmark
+    fun keySavedStateFactoryCreator(): TestSavedStateViewModel {
+        val vm = newProvider().get("savedStateFactoryKey", TestSavedStateViewModelFactory, savedStateCreator)
+        registry.unregisterSavedStateProvider("savedStateFactoryKey")
+        return vm
+    }
+
+    @Benchmark
+    fun androidxViewModelProvider() =
+        ViewModelProvider(ViewModelStore(), TestViewModelProviderFactory).get(TestViewModel::class.java)
+}
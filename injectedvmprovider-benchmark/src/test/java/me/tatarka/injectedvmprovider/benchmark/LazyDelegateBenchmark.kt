@@ -0,0 +1,78 @@
+package me.tatarka.injectedvmprovider.benchmark
+
+import androidx.lifecycle.ViewModelLazy
+import androidx.lifecycle.ViewModelStore
+import androidx.lifecycle.ViewModelStoreOwner
+import androidx.savedstate.SavedStateRegistryOwner
+import me.tatarka.injectedvmprovider.viewModels
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * The ktx `viewModels` [Lazy] delegates compared to androidx's [ViewModelLazy] with a
+ * `ViewModelProvider.Factory`. The benchmarks that create the ViewModel create their owner as well,
+ * as a per-invocation setup would cost more than what's measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class LazyDelegateBenchmark {
+
+    private lateinit var existingOwner: ViewModelStoreOwner
+
+    @Setup
+    fun setup() {
+        useBenchmarkThreadAsMainThread()
+        val store = ViewModelStore()
+        existingOwner = ViewModelStoreOwner { store }
+        existingOwner.viewModels(TestViewModelProvider).value
+        ViewModelLazy(TestViewModel::class, { store }, { TestViewModelProviderFactory }).value
+    }
+
+    /**
+     * Creating the delegate and accessing it the first time, which creates the ViewModel.
+     */
+    @Benchmark
+    fun providerDelegate(): TestViewModel {
+        val store = ViewModelStore()
+        return ViewModelStoreOwner { store }.viewModels(TestViewModelProvider).value
+    }
+
+    @Benchmark
+    fun savedStateDelegate() = SavedStateOwner().viewModels({ null }) { TestSavedStateViewModel(it) }.value
+
+    @Benchmark
+    fun androidxDelegate(): TestViewModel {
+        val store = ViewModelStore()
+        return ViewModelLazy(TestViewModel::class, { store }, { TestViewModelProviderFactory }).value
+    }
+
+    /**
+     * Creating the delegate and accessing it when the ViewModel is already in the store, as happens
+     * after a configuration change.
+     */
+    @Benchmark
+    fun providerDelegateExisting() = existingOwner.viewModels(TestViewModelProvider).value
+
+    @Benchmark
+    fun androidxDelegateExisting() =
+        ViewModelLazy(TestViewModel::class, { existingOwner.viewModelStore }, { TestViewModelProviderFactory }).value
+
+    class SavedStateOwner : ViewModelStoreOwner, SavedStateRegistryOwner by SavedState() {
+        private val store = ViewModelStore()
+
+        override fun getViewModelStore() = store
+    }
+}
@@ -0,0 +1,85 @@
+package me.tatarka.injectedvmprovider.benchmark
+
+import android.os.Bundle
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.SavedStateHandleBridge
+import androidx.lifecycle.ViewModelStore
+import androidx.savedstate.SavedStateRegistry
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.SavedStateFactory
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+private const val KEY = "savedState"
+
+/**
+ * Restoring, registering and saving a [SavedStateHandle] through [SavedStateHandleBridge] and
+ * the SavedState [InjectedViewModelProvider.get] path. Restored state can only be consumed once, so
+ * the benchmarks that consume it restore a registry first; [restoreRegistry] measures that on its
+ * own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class SavedStateBenchmark {
+
+    @JvmField
+    @Param("0", "10", "100")
+    var entries: Int = 0
+
+    private lateinit var savedState: Bundle
+    private lateinit var restoredState: Bundle
+    private lateinit var saveProvider: SavedStateRegistry.SavedStateProvider
+    private lateinit var incrementalSaveProvider: SavedStateRegistry.SavedStateProvider
+
+    @Setup
+    fun setup() {
+        useBenchmarkThreadAsMainThread()
+        savedState = savedStateWith(KEY, entries)
+        restoredState = SavedState(savedState).savedStateRegistry.consumeRestoredStateForKey(KEY)!!
+        saveProvider = SavedStateHandleBridge.savedStateProvider(
+            SavedStateHandleBridge.createHandle(restoredState, null)
+        )
+        incrementalSaveProvider = SavedStateHandleBridge.incrementalSavedStateProvider(
+            SavedStateHandleBridge.createHandle(restoredState, null)
+        )
+    }
+
+    @Benchmark
+    fun createHandle(): SavedStateHandle = SavedStateHandleBridge.createHandle(restoredState, null)
+
+    @Benchmark
+    fun save(): Bundle = saveProvider.saveState()
+
+    @Benchmark
+    fun saveUnchanged(): Bundle = incrementalSaveProvider.saveState()
+
+    @Benchmark
+    fun restoreRegistry(): SavedStateRegistry = SavedState(savedState).savedStateRegistry
+
+    @Benchmark
+    fun consumeAndRegister() {
+        val registry = SavedState(savedState).savedStateRegistry
+        val restored = registry.consumeRestoredStateForKey(KEY)
+        val handle = SavedStateHandleBridge.createHandle(restored, null)
+        registry.registerSavedStateProvider(KEY, SavedStateHandleBridge.savedStateProvider(handle))
+    }
+
+    @Benchmark
+    fun getRestored(): TestSavedStateViewModel =
+        InjectedViewModelProvider(ViewModelStore(), SavedState(savedState).savedStateRegistry, null)
+            .get(KEY, SavedStateFactory { TestSavedStateViewModel(it) })
+}
@@ -0,0 +1,203 @@
+package me.tatarka.injectedvmprovider.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code <ViewModel>_Injected} class for every class annotated with
+ * {@code @InjectedViewModel}. The generated class holds the ViewModel's key as a compile-time
+ * constant and as a typed {@code ViewModelKey}, and static typed {@code get} methods that pass it to
+ * {@code InjectedViewModelProvider}.
+ * <p>
+ * Classes that can't have a stable key (local or anonymous classes, or classes nested in them) are
+ * reported as errors here instead of failing at runtime.
+ */
+public class InjectedViewModelProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "me.tatarka.injectedvmprovider.InjectedViewModel";
+    static final String SUFFIX = "_Injected";
+
+    /**
+     * Must match {@code InjectedViewModelProvider.DEFAULT_KEY}.
+     */
+    private static final String DEFAULT_KEY = "androidx.lifecycle.ViewModelProvider.DefaultKey";
+
+    private static final String PACKAGE = "me.tatarka.injectedvmprovider";
+    private static final ClassName VIEW_MODEL = ClassName.get("androidx.lifecycle", "ViewModel");
+    private static final ClassName NON_NULL = ClassName.get("androidx.annotation", "NonNull");
+    private static final ClassName MAIN_THREAD = ClassName.get("androidx.annotation", "MainThread");
+    private static final ClassName PROVIDER = ClassName.get("javax.inject", "Provider");
+    private static final ClassName INJECTED_VIEW_MODEL_PROVIDER = ClassName.get(PACKAGE, "InjectedViewModelProvider");
+    private static final ClassName SAVED_STATE_FACTORY = ClassName.get(PACKAGE, "SavedStateFactory");
+    private static final ClassName FACTORY_CREATOR = ClassName.get(PACKAGE, "FactoryCreator");
+    private static final ClassName SAVED_STATE_FACTORY_CREATOR = ClassName.get(PACKAGE, "SavedStateFactoryCreator");
+    private static final ClassName VIEW_MODEL_KEY = ClassName.get(PACKAGE, "ViewModelKey");
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = elements.getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            TypeElement type = (TypeElement) element;
+            if (validate(type)) {
+                write(type);
+            }
+        }
+        return true;
+    }
+
+    private boolean validate(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS) {
+            error(type, "@InjectedViewModel can only be applied to classes");
+            return false;
+        }
+        TypeElement viewModel = elements.getTypeElement(VIEW_MODEL.canonicalName());
+        if (viewModel == null || !types.isSubtype(types.erasure(type.asType()), types.erasure(viewModel.asType()))) {
+            error(type, "@InjectedViewModel can only be applied to subclasses of " + VIEW_MODEL);
+            return false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "@InjectedViewModel can not be applied to generic classes");
+            return false;
+        }
+        Element current = type;
+        while (current.getKind().isClass() || current.getKind().isInterface()) {
+            TypeElement currentType = (TypeElement) current;
+            if (currentType.getNestingKind() == NestingKind.LOCAL || currentType.getNestingKind() == NestingKind.ANONYMOUS) {
+                error(type, "Local and anonymous classes can not be ViewModels");
+                return false;
+            }
+            if (currentType.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, "@InjectedViewModel classes must not be private");
+                return false;
+            }
+            current = current.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void write(TypeElement type) {
+        ClassName viewModelName = ClassName.get(type);
+        ClassName generatedName = generatedName(viewModelName);
+        TypeVariableName f = TypeVariableName.get("F");
+
+        TypeSpec generated = TypeSpec.classBuilder(generatedName)
+                .addOriginatingElement(type)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Typed accessors for {@link $T}.\n", viewModelName)
+                .addField(FieldSpec.builder(String.class, "KEY", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$S", DEFAULT_KEY + ":" + type.getQualifiedName())
+                        .build())
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(VIEW_MODEL_KEY, viewModelName), "VIEW_MODEL_KEY", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.of(KEY, $T.class)", VIEW_MODEL_KEY, viewModelName)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(getMethod(viewModelName)
+                        .addParameter(nonNull(ParameterizedTypeName.get(PROVIDER, viewModelName), "provider"))
+                        .addStatement("return viewModelProvider.get(KEY, provider)")
+                        .build())
+                .addMethod(getMethod(viewModelName)
+                        .addParameter(nonNull(ParameterizedTypeName.get(SAVED_STATE_FACTORY, viewModelName), "factory"))
+                        .addStatement("return viewModelProvider.get(KEY, factory)")
+                        .build())
+                .addMethod(getMethod(viewModelName)
+                        .addTypeVariable(f)
+                        .addParameter(nonNull(f, "factory"))
+                        .addParameter(nonNull(ParameterizedTypeName.get(FACTORY_CREATOR, f, viewModelName), "creator"))
+                        .addStatement("return viewModelProvider.get(KEY, factory, creator)")
+                        .build())
+                .addMethod(getMethod(viewModelName)
+                        .addTypeVariable(f)
+                        .addParameter(nonNull(f, "factory"))
+                        .addParameter(nonNull(ParameterizedTypeName.get(SAVED_STATE_FACTORY_CREATOR, f, viewModelName), "creator"))
+                        .addStatement("return viewModelProvider.get(KEY, factory, creator)")
+                        .build())
+                .build();
+
+        try {
+            JavaFile.builder(generatedName.packageName(), generated)
+                    .skipJavaLangImports(true)
+                    .build()
+                    .writeTo(filer);
+        } catch (IOException e) {
+            error(type, "Failed to write " + generatedName + ": " + e.getMessage());
+        }
+    }
+
+    private static MethodSpec.Builder getMethod(ClassName viewModelName) {
+        return MethodSpec.methodBuilder("get")
+                .addAnnotation(NON_NULL)
+                .addAnnotation(MAIN_THREAD)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(viewModelName)
+                .addParameter(nonNull(INJECTED_VIEW_MODEL_PROVIDER, "viewModelProvider"));
+    }
+
+    private static ParameterSpec nonNull(TypeName type, String name) {
+        return ParameterSpec.builder(type, name)
+                .addAnnotation(NON_NULL)
+                .build();
+    }
+
+    static ClassName generatedName(ClassName viewModelName) {
+        return ClassName.get(viewModelName.packageName(), String.join("_", viewModelName.simpleNames()) + SUFFIX);
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
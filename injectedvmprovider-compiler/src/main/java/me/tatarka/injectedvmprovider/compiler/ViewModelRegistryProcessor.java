@@ -0,0 +1,244 @@
+package me.tatarka.injectedvmprovider.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code <Interface>_Registry} class for every interface annotated with
+ * {@code @ViewModelRegistry}. Each provision method of the interface gets a constant index, and the
+ * generated class maps a ViewModel class to its index and creates the ViewModel for an index with a
+ * switch, so only one class is needed no matter how many ViewModels there are.
+ */
+public class ViewModelRegistryProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "me.tatarka.injectedvmprovider.dagger.ViewModelRegistry";
+    static final String SUFFIX = "_Registry";
+
+    private static final ClassName VIEW_MODEL = ClassName.get("androidx.lifecycle", "ViewModel");
+    private static final ClassName NON_NULL = ClassName.get("androidx.annotation", "NonNull");
+    private static final ClassName GENERATED_REGISTRY = ClassName.get("me.tatarka.injectedvmprovider.dagger", "GeneratedRegistry");
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = elements.getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@ViewModelRegistry can only be applied to interfaces");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<ExecutableElement> methods = provisionMethods(type);
+            if (methods != null) {
+                write(type, methods);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the provision methods of the registry, or null if any of them are invalid.
+     */
+    private List<ExecutableElement> provisionMethods(TypeElement type) {
+        TypeElement viewModel = elements.getTypeElement(VIEW_MODEL.canonicalName());
+        List<ExecutableElement> methods = new ArrayList<>();
+        Map<String, ExecutableElement> byViewModel = new HashMap<>();
+        Map<String, ExecutableElement> byConstant = new HashMap<>();
+        boolean valid = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            TypeMirror returnType = method.getReturnType();
+            if (!method.getParameters().isEmpty() || returnType.getKind() != TypeKind.DECLARED) {
+                error(method, "@ViewModelRegistry methods must take no parameters and return a ViewModel");
+                valid = false;
+                continue;
+            }
+            if (viewModel == null || !types.isSubtype(types.erasure(returnType), types.erasure(viewModel.asType()))) {
+                error(method, "@ViewModelRegistry methods must return a subclass of " + VIEW_MODEL);
+                valid = false;
+                continue;
+            }
+            if (!((DeclaredType) returnType).getTypeArguments().isEmpty()) {
+                error(method, "@ViewModelRegistry methods can not return generic ViewModels");
+                valid = false;
+                continue;
+            }
+            String viewModelName = binaryName(method);
+            ExecutableElement existing = byViewModel.put(viewModelName, method);
+            if (existing != null) {
+                error(method, viewModelName + " is already provided by " + existing.getSimpleName() + "()");
+                valid = false;
+                continue;
+            }
+            String constant = constantName(method.getSimpleName().toString());
+            existing = byConstant.put(constant, method);
+            if (existing != null) {
+                error(method, method.getSimpleName() + "() and " + existing.getSimpleName() + "() both map to the constant " + constant + ", rename one of them");
+                valid = false;
+                continue;
+            }
+            methods.add(method);
+        }
+        return valid ? methods : null;
+    }
+
+    private void write(TypeElement type, List<ExecutableElement> methods) {
+        ClassName registryName = ClassName.get(type);
+        ClassName generatedName = generatedName(registryName);
+
+        TypeSpec.Builder generated = TypeSpec.classBuilder(generatedName)
+                .addOriginatingElement(type)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addSuperinterface(GENERATED_REGISTRY)
+                .addJavadoc("Creates the ViewModels of {@link $T}.\n", registryName);
+
+        CodeBlock.Builder indexOf = CodeBlock.builder().beginControlFlow("switch (viewModelClass.getName())");
+        CodeBlock.Builder create = CodeBlock.builder().beginControlFlow("switch (index)");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            String constant = constantName(method.getSimpleName().toString());
+            generated.addField(FieldSpec.builder(int.class, constant, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$L", i)
+                    .build());
+            indexOf.add("case $S:\n", binaryName(method)).indent().addStatement("return $N", constant).unindent();
+            create.add("case $N:\n", constant).indent().addStatement("return viewModels.$N()", method.getSimpleName()).unindent();
+        }
+        indexOf.add("default:\n").indent().addStatement("return -1").unindent().endControlFlow();
+        create.add("default:\n").indent()
+                .addStatement("throw new $T($S + index)", IndexOutOfBoundsException.class, "No ViewModel at index ")
+                .unindent().endControlFlow();
+
+        generated.addField(registryName, "viewModels", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ParameterSpec.builder(registryName, "viewModels").addAnnotation(NON_NULL).build())
+                        .addStatement("this.viewModels = viewModels")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return $L", methods.size())
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("indexOf")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addParameter(ParameterSpec.builder(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)), "viewModelClass")
+                                .addAnnotation(NON_NULL)
+                                .build())
+                        .addCode(indexOf.build())
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("create")
+                        .addAnnotation(NON_NULL)
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(VIEW_MODEL)
+                        .addParameter(int.class, "index")
+                        .addCode(create.build())
+                        .build());
+
+        try {
+            JavaFile.builder(generatedName.packageName(), generated.build())
+                    .skipJavaLangImports(true)
+                    .build()
+                    .writeTo(filer);
+        } catch (IOException e) {
+            error(type, "Failed to write " + generatedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the name of the ViewModel the method returns, as returned by {@link Class#getName()}.
+     */
+    private String binaryName(ExecutableElement method) {
+        TypeElement viewModel = (TypeElement) types.asElement(method.getReturnType());
+        return elements.getBinaryName(viewModel).toString();
+    }
+
+    /**
+     * Converts a method name like {@code mainViewModel} to a constant name like {@code MAIN_VIEW_MODEL}.
+     */
+    static String constantName(String methodName) {
+        StringBuilder name = new StringBuilder(methodName.length() + 4);
+        for (int i = 0; i < methodName.length(); i++) {
+            char c = methodName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                name.append('_');
+            }
+            name.append(c);
+        }
+        return name.toString().toUpperCase(Locale.ROOT);
+    }
+
+    static ClassName generatedName(ClassName registryName) {
+        return ClassName.get(registryName.packageName(), String.join("_", registryName.simpleNames()) + SUFFIX);
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,275 @@
+import com.google.testing.compile.CompilationSubject.assertThat
+import com.google.testing.compile.Compiler.javac
+import com.google.testing.compile.JavaFileObjects
+import me.tatarka.injectedvmprovider.compiler.InjectedViewModelProcessor
+import me.tatarka.injectedvmprovider.compiler.ViewModelRegistryProcessor
+import kotlin.test.Test
+
+class InjectedViewModelProcessorTest {
+
+    @Test
+    fun `generates key and accessors for a top-level ViewModel`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModel",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.InjectedViewModel",
+                "public class MyViewModel extends androidx.lifecycle.ViewModel {}"
+            )
+        )
+
+        assertThat(compilation).succeeded()
+        assertThat(compilation).generatedSourceFile("test.MyViewModel_Injected")
+            .contentsAsUtf8String()
+            .contains("public static final String KEY = \"androidx.lifecycle.ViewModelProvider.DefaultKey:test.MyViewModel\";")
+        assertThat(compilation).generatedSourceFile("test.MyViewModel_Injected")
+            .contentsAsUtf8String()
+            .contains("return viewModelProvider.get(KEY, provider);")
+        assertThat(compilation).generatedSourceFile("test.MyViewModel_Injected")
+            .contentsAsUtf8String()
+            .contains("public static final ViewModelKey<MyViewModel> VIEW_MODEL_KEY = ViewModelKey.of(KEY, MyViewModel.class);")
+    }
+
+    @Test
+    fun `generates key using the canonical name of a nested ViewModel`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.Outer",
+                "package test;",
+                "public class Outer {",
+                "  @me.tatarka.injectedvmprovider.InjectedViewModel",
+                "  public static class MyViewModel extends androidx.lifecycle.ViewModel {}",
+                "}"
+            )
+        )
+
+        assertThat(compilation).succeeded()
+        assertThat(compilation).generatedSourceFile("test.Outer_MyViewModel_Injected")
+            .contentsAsUtf8String()
+            .contains("\"androidx.lifecycle.ViewModelProvider.DefaultKey:test.Outer.MyViewModel\"")
+    }
+
+    @Test
+    fun `local ViewModel fails to compile`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.Outer",
+                "package test;",
+                "public class Outer {",
+                "  void method() {",
+                "    @me.tatarka.injectedvmprovider.InjectedViewModel",
+                "    class MyViewModel extends androidx.lifecycle.ViewModel {}",
+                "  }",
+                "}"
+            )
+        )
+
+        assertThat(compilation).failed()
+        assertThat(compilation).hadErrorContaining("Local and anonymous classes can not be ViewModels")
+    }
+
+    @Test
+    fun `non-ViewModel fails to compile`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.NotAViewModel",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.InjectedViewModel",
+                "public class NotAViewModel {}"
+            )
+        )
+
+        assertThat(compilation).failed()
+        assertThat(compilation).hadErrorContaining("can only be applied to subclasses of androidx.lifecycle.ViewModel")
+    }
+
+    @Test
+    fun `generates a switch-based registry for a ViewModelRegistry`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModels",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.dagger.ViewModelRegistry",
+                "public interface MyViewModels {",
+                "  MyViewModel myViewModel();",
+                "  Outer.Nested nestedViewModel();",
+                "}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModel",
+                "package test;",
+                "public class MyViewModel extends androidx.lifecycle.ViewModel {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "test.Outer",
+                "package test;",
+                "public class Outer {",
+                "  public static class Nested extends androidx.lifecycle.ViewModel {}",
+                "}"
+            )
+        )
+
+        assertThat(compilation).succeeded()
+        val registry = assertThat(compilation).generatedSourceFile("test.MyViewModels_Registry").contentsAsUtf8String()
+        registry.contains("private static final int MY_VIEW_MODEL = 0;")
+        registry.contains("case \"test.Outer\$Nested\":")
+        registry.contains("return viewModels.nestedViewModel();")
+    }
+
+    @Test
+    fun `ViewModelRegistry with two methods for the same ViewModel fails to compile`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModels",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.dagger.ViewModelRegistry",
+                "public interface MyViewModels {",
+                "  MyViewModel first();",
+                "  MyViewModel second();",
+                "}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModel",
+                "package test;",
+                "public class MyViewModel extends androidx.lifecycle.ViewModel {}"
+            )
+        )
+
+        assertThat(compilation).failed()
+        assertThat(compilation).hadErrorContaining("test.MyViewModel is already provided by first()")
+    }
+
+    @Test
+    fun `ViewModelRegistry methods with the same constant name fail to compile`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModels",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.dagger.ViewModelRegistry",
+                "public interface MyViewModels {",
+                "  FirstViewModel fooBar();",
+                "  SecondViewModel foo_bar();",
+                "}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "test.FirstViewModel",
+                "package test;",
+                "public class FirstViewModel extends androidx.lifecycle.ViewModel {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "test.SecondViewModel",
+                "package test;",
+                "public class SecondViewModel extends androidx.lifecycle.ViewModel {}"
+            )
+        )
+
+        assertThat(compilation).failed()
+        assertThat(compilation).hadErrorContaining("foo_bar() and fooBar() both map to the constant FOO_BAR")
+    }
+
+    @Test
+    fun `ViewModelRegistry method with parameters fails to compile`() {
+        val compilation = compile(
+            JavaFileObjects.forSourceLines(
+                "test.MyViewModels",
+                "package test;",
+                "@me.tatarka.injectedvmprovider.dagger.ViewModelRegistry",
+                "public interface MyViewModels {",
+                "  androidx.lifecycle.ViewModel viewModel(String arg);",
+                "}"
+            )
+        )
+
+        assertThat(compilation).failed()
+        assertThat(compilation).hadErrorContaining("must take no parameters and return a ViewModel")
+    }
+
+    private fun compile(vararg sources: javax.tools.JavaFileObject) =
+        javac().withProcessors(InjectedViewModelProcessor(), ViewModelRegistryProcessor()).compile(*STUBS, *sources)
+
+    companion object {
+        /**
+         * Minimal versions of the android library classes the generated code compiles against.
+         */
+        private val STUBS = arrayOf(
+            JavaFileObjects.forSourceLines(
+                "androidx.lifecycle.ViewModel",
+                "package androidx.lifecycle;",
+                "public abstract class ViewModel {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "androidx.lifecycle.SavedStateHandle",
+                "package androidx.lifecycle;",
+                "public final class SavedStateHandle {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "androidx.annotation.NonNull",
+                "package androidx.annotation;",
+                "public @interface NonNull {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "androidx.annotation.MainThread",
+                "package androidx.annotation;",
+                "public @interface MainThread {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "javax.inject.Provider",
+                "package javax.inject;",
+                "public interface Provider<T> { T get(); }"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.InjectedViewModel",
+                "package me.tatarka.injectedvmprovider;",
+                "public @interface InjectedViewModel {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.FactoryCreator",
+                "package me.tatarka.injectedvmprovider;",
+                "public interface FactoryCreator<F, T> { T create(F factory); }"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.SavedStateFactory",
+                "package me.tatarka.injectedvmprovider;",
+                "public interface SavedStateFactory<T> { T create(androidx.lifecycle.SavedStateHandle handle); }"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.SavedStateFactoryCreator",
+                "package me.tatarka.injectedvmprovider;",
+                "public interface SavedStateFactoryCreator<F, T> { T create(F factory, androidx.lifecycle.SavedStateHandle handle); }"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.ViewModelKey",
+                "package me.tatarka.injectedvmprovider;",
+                "public final class ViewModelKey<T extends androidx.lifecycle.ViewModel> {",
+                "  public static <T extends androidx.lifecycle.ViewModel> ViewModelKey<T> of(String key, Class<T> viewModelClass) { return null; }",
+                "}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.dagger.ViewModelRegistry",
+                "package me.tatarka.injectedvmprovider.dagger;",
+                "public @interface ViewModelRegistry {}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.dagger.GeneratedRegistry",
+                "package me.tatarka.injectedvmprovider.dagger;",
+                "public interface GeneratedRegistry {",
+                "  int size();",
+                "  int indexOf(Class<?> viewModelClass);",
+                "  androidx.lifecycle.ViewModel create(int index);",
+                "}"
+            ),
+            JavaFileObjects.forSourceLines(
+                "me.tatarka.injectedvmprovider.InjectedViewModelProvider",
+                "package me.tatarka.injectedvmprovider;",
+                "import androidx.lifecycle.ViewModel;",
+                "import javax.inject.Provider;",
+                "public class InjectedViewModelProvider {",
+                "  public <T extends ViewModel> T get(String key, Provider<T> provider) { return null; }",
+                "  public <T extends ViewModel> T get(String key, SavedStateFactory<T> factory) { return null; }",
+                "  public <F, T extends ViewModel> T get(String key, F factory, FactoryCreator<F, T> creator) { return null; }",
+                "  public <F, T extends ViewModel> T get(String key, F factory, SavedStateFactoryCreator<F, T> creator) { return null; }",
+                "}"
+            )
+        )
+    }
+}
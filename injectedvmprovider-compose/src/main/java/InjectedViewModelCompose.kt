@@ -0,0 +1,123 @@
+package me.tatarka.injectedvmprovider.compose
+
+import android.os.Bundle
+import androidx.activity.ComponentActivity
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.remember
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelStoreOwner
+import androidx.lifecycle.viewmodel.compose.LocalViewModelStoreOwner
+import androidx.savedstate.SavedStateRegistryOwner
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.SavedStateFactory
+import me.tatarka.injectedvmprovider.injectedViewModelProvider
+import javax.inject.Provider
+
+/**
+ * Returns the ViewModel of the [viewModelStoreOwner], creating it with the given provider if it
+ * doesn't exist yet. The ViewModel is remembered, so recomposing doesn't look it up in the store
+ * again.
+ *
+ * ```
+ * @Composable
+ * fun MyScreen(provider: Provider<MyViewModel>) {
+ *     val myViewModel = injectedViewModel(provider)
+ * }
+ * ```
+ *
+ * @param key the key of the ViewModel in the store, or null to use the default key for [VM].
+ */
+@Composable
+inline fun <reified VM : ViewModel> injectedViewModel(
+    provider: Provider<VM>,
+    key: String? = null,
+    viewModelStoreOwner: ViewModelStoreOwner = checkNotNull(LocalViewModelStoreOwner.current) {
+        "No ViewModelStoreOwner was provided via LocalViewModelStoreOwner"
+    }
+): VM = injectedViewModel(VM::class.java, provider, key, viewModelStoreOwner)
+
+/**
+ * Returns the ViewModel of the [viewModelStoreOwner], creating it with the given provider if it
+ * doesn't exist yet. The ViewModel is remembered, so recomposing doesn't look it up in the store
+ * again.
+ *
+ * @param key the key of the ViewModel in the store, or null to use the default key for
+ * [viewModelClass].
+ */
+@Composable
+fun <VM : ViewModel> injectedViewModel(
+    viewModelClass: Class<VM>,
+    provider: Provider<VM>,
+    key: String?,
+    viewModelStoreOwner: ViewModelStoreOwner
+): VM = remember(viewModelStoreOwner, viewModelClass, key) {
+    val viewModelProvider = viewModelStoreOwner.injectedViewModelProvider()
+    if (key != null) {
+        viewModelProvider.get(key, provider)
+    } else {
+        viewModelProvider.get(viewModelClass, provider)
+    }
+}
+
+/**
+ * Returns the ViewModel of the [viewModelStoreOwner], creating it with the given factory if it
+ * doesn't exist yet. The ViewModel is remembered, so recomposing doesn't look it up in the store
+ * again.
+ *
+ * ```
+ * @Composable
+ * fun MyScreen(factory: MyViewModel.Factory) {
+ *     val myViewModel = injectedViewModel { handle -> factory.create(handle) }
+ * }
+ * ```
+ *
+ * @param key the key of the ViewModel in the store, or null to use the default key for [VM].
+ * @param viewModelStoreOwner the owner of the ViewModel. It must also be a
+ * [SavedStateRegistryOwner].
+ * @param defaultArgs the default values of the [SavedStateHandle], the activity's intent extras if
+ * the owner is an activity.
+ */
+@Composable
+inline fun <reified VM : ViewModel> injectedViewModel(
+    key: String? = null,
+    viewModelStoreOwner: ViewModelStoreOwner = checkNotNull(LocalViewModelStoreOwner.current) {
+        "No ViewModelStoreOwner was provided via LocalViewModelStoreOwner"
+    },
+    defaultArgs: Bundle? = (viewModelStoreOwner as? ComponentActivity)?.intent?.extras,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): VM = injectedViewModel(VM::class.java, key, viewModelStoreOwner, defaultArgs, factory)
+
+/**
+ * Returns the ViewModel of the [viewModelStoreOwner], creating it with the given factory if it
+ * doesn't exist yet. The ViewModel is remembered, so recomposing doesn't look it up in the store
+ * again.
+ *
+ * @param key the key of the ViewModel in the store, or null to use the default key for
+ * [viewModelClass].
+ * @param viewModelStoreOwner the owner of the ViewModel. It must also be a
+ * [SavedStateRegistryOwner].
+ * @param defaultArgs the default values of the [SavedStateHandle].
+ */
+@Composable
+fun <VM : ViewModel> injectedViewModel(
+    viewModelClass: Class<VM>,
+    key: String?,
+    viewModelStoreOwner: ViewModelStoreOwner,
+    defaultArgs: Bundle?,
+    factory: (handle: SavedStateHandle) -> VM
+): VM = remember(viewModelStoreOwner, viewModelClass, key) {
+    val viewModelProvider = savedStateProvider(viewModelStoreOwner, defaultArgs)
+    if (key != null) {
+        viewModelProvider.get(key, SavedStateFactory(factory))
+    } else {
+        viewModelProvider.get(viewModelClass, SavedStateFactory(factory))
+    }
+}
+
+private fun savedStateProvider(owner: ViewModelStoreOwner, defaultArgs: Bundle?): InjectedViewModelProvider {
+    require(owner is SavedStateRegistryOwner) {
+        "$owner must be a SavedStateRegistryOwner to create a ViewModel with a SavedStateHandle"
+    }
+    return owner.injectedViewModelProvider { defaultArgs }
+}
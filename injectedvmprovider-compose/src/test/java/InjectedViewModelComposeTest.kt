@@ -0,0 +1,134 @@
+package me.tatarka.injectedvmprovider.compose
+
+import android.os.Bundle
+import androidx.activity.ComponentActivity
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.compose.ui.test.junit4.createAndroidComposeRule
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.ViewModel
+import me.tatarka.injectedvmprovider.InjectedViewModelListener
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import org.junit.Rule
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import javax.inject.Provider
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class InjectedViewModelComposeTest {
+
+    @get:Rule
+    val composeTestRule = createAndroidComposeRule<ComponentActivity>()
+
+    private val lookups = CountingListener()
+
+    @BeforeTest
+    fun setup() {
+        InjectedViewModelProvider.setGlobalListener(lookups)
+    }
+
+    @AfterTest
+    fun teardown() {
+        InjectedViewModelProvider.setGlobalListener(null)
+    }
+
+    @Test
+    fun `recomposing doesn't look up the ViewModel again`() {
+        var recompositions by mutableStateOf(0)
+        val composed = mutableListOf<Int>()
+        val viewModels = mutableListOf<TestViewModel>()
+        composeTestRule.setContent {
+            composed += recompositions
+            viewModels += injectedViewModel(TestViewModelProvider())
+        }
+        repeat(3) {
+            composeTestRule.runOnIdle { recompositions += 1 }
+        }
+        composeTestRule.waitForIdle()
+
+        assertEquals(listOf(0, 1, 2, 3), composed)
+        assertTrue(viewModels.all { it === viewModels[0] })
+        assertEquals(1, lookups.created)
+        assertEquals(0, lookups.hits)
+    }
+
+    @Test
+    fun `recomposing doesn't look up the SavedStateHandle ViewModel again`() {
+        var recompositions by mutableStateOf(0)
+        val viewModels = mutableListOf<TestSavedStateViewModel>()
+        composeTestRule.setContent {
+            recompositions.hashCode()
+            viewModels += injectedViewModel { handle -> TestSavedStateViewModel(handle) }
+        }
+        repeat(3) {
+            composeTestRule.runOnIdle { recompositions += 1 }
+        }
+        composeTestRule.waitForIdle()
+
+        assertEquals(4, viewModels.size)
+        assertTrue(viewModels.all { it === viewModels[0] })
+        assertEquals(1, lookups.created)
+        assertEquals(0, lookups.hits)
+    }
+
+    @Test
+    fun `SavedStateHandle ViewModel gets the given default args`() {
+        lateinit var vm: TestSavedStateViewModel
+        composeTestRule.setContent {
+            vm = injectedViewModel(defaultArgs = Bundle().apply { putString("arg", "value") }) { handle ->
+                TestSavedStateViewModel(handle)
+            }
+        }
+        composeTestRule.waitForIdle()
+
+        assertEquals("value", vm.handle.get<String>("arg"))
+    }
+
+    @Test
+    fun `different keys are different ViewModels`() {
+        lateinit var vm1: TestViewModel
+        lateinit var vm2: TestViewModel
+        composeTestRule.setContent {
+            vm1 = injectedViewModel(TestViewModelProvider(), key = "vm1")
+            vm2 = injectedViewModel(TestViewModelProvider(), key = "vm2")
+        }
+        composeTestRule.waitForIdle()
+
+        assertNotSame(vm1, vm2)
+        assertEquals(2, lookups.created)
+    }
+}
+
+class TestViewModel : ViewModel()
+
+class TestViewModelProvider : Provider<TestViewModel> {
+    override fun get() = TestViewModel()
+}
+
+class TestSavedStateViewModel(val handle: SavedStateHandle) : ViewModel()
+
+class CountingListener : InjectedViewModelListener {
+    var hits = 0
+    var created = 0
+
+    override fun onViewModelHit(key: String, viewModel: ViewModel) {
+        hits += 1
+    }
+
+    override fun onViewModelCreated(
+        key: String,
+        viewModel: ViewModel,
+        durationNanos: Long,
+        restoredStateSize: Int,
+        thread: Thread
+    ) {
+        created += 1
+    }
+}
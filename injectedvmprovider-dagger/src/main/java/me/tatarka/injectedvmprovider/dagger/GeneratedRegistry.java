@@ -0,0 +1,30 @@
+package me.tatarka.injectedvmprovider.dagger;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+
+/**
+ * Implemented by the {@code <Interface>_Registry} classes generated for a
+ * {@link ViewModelRegistry}. Each ViewModel in the registry has a constant index, so creating one
+ * is a single switch.
+ */
+public interface GeneratedRegistry {
+
+    /**
+     * Returns the number of ViewModels in the registry.
+     */
+    int size();
+
+    /**
+     * Returns the index of the given ViewModel class, or -1 if it's not in the registry.
+     */
+    int indexOf(@NonNull Class<?> viewModelClass);
+
+    /**
+     * Creates the ViewModel at the given index.
+     *
+     * @throws IndexOutOfBoundsException If the index is not in the registry.
+     */
+    @NonNull
+    ViewModel create(int index);
+}
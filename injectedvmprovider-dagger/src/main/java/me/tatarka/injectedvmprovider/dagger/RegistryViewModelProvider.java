@@ -0,0 +1,82 @@
+package me.tatarka.injectedvmprovider.dagger;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+
+import javax.inject.Provider;
+
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider;
+
+/**
+ * Obtains ViewModels by class from an {@link InjectedViewModelProvider}, creating them with a
+ * {@link GeneratedRegistry} instead of an injected {@link Provider} for each one.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * RegistryViewModelProvider provider = new RegistryViewModelProvider(
+ *         new InjectedViewModelProvider(this), new MainViewModels_Registry(component));
+ * MainViewModel vm = provider.get(MainViewModel.class);
+ * }</pre>
+ */
+public final class RegistryViewModelProvider {
+
+    private final InjectedViewModelProvider viewModelProvider;
+    private final GeneratedRegistry registry;
+    private final Provider<?>[] providers;
+
+    /**
+     * @param viewModelProvider The provider of the scope to get ViewModels from.
+     * @param registry          The registry to create ViewModels with.
+     */
+    public RegistryViewModelProvider(@NonNull InjectedViewModelProvider viewModelProvider, @NonNull GeneratedRegistry registry) {
+        this.viewModelProvider = viewModelProvider;
+        this.registry = registry;
+        this.providers = new Provider<?>[registry.size()];
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope, keyed the same as
+     * {@link InjectedViewModelProvider#get(Class, Provider)}.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param <T>            The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If the given viewModelClass is not in the registry.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(@NonNull Class<T> viewModelClass) {
+        int index = registry.indexOf(viewModelClass);
+        if (index < 0) {
+            throw new IllegalArgumentException(viewModelClass.getName() + " is not in " + registry.getClass().getName());
+        }
+        //noinspection unchecked
+        Provider<T> provider = (Provider<T>) providers[index];
+        if (provider == null) {
+            provider = new IndexProvider<>(registry, index);
+            providers[index] = provider;
+        }
+        return viewModelProvider.get(viewModelClass, provider);
+    }
+
+    /**
+     * Creates the ViewModel at an index of the registry. This is the only provider class no matter
+     * how many ViewModels are in the registry.
+     */
+    private static final class IndexProvider<T extends ViewModel> implements Provider<T> {
+        private final GeneratedRegistry registry;
+        private final int index;
+
+        IndexProvider(GeneratedRegistry registry, int index) {
+            this.registry = registry;
+            this.index = index;
+        }
+
+        @Override
+        public T get() {
+            //noinspection unchecked
+            return (T) registry.create(index);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package me.tatarka.injectedvmprovider.dagger;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface that lists the ViewModels of a dagger component, one provision method per
+ * ViewModel. {@code injectedvmprovider-compiler} generates a {@code <Interface>_Registry} class for
+ * it that creates any of them from a single switch, so the component doesn't need to inject a
+ * {@code Provider} for each ViewModel.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * @ViewModelRegistry
+ * public interface MainViewModels {
+ *     MainViewModel mainViewModel();
+ *
+ *     SettingsViewModel settingsViewModel();
+ * }
+ *
+ * @Component(modules = MainModule.class)
+ * public interface MainActivityComponent extends MainViewModels {
+ *     void inject(MainActivity activity);
+ * }
+ *
+ * RegistryViewModelProvider provider = new RegistryViewModelProvider(
+ *         new InjectedViewModelProvider(this), new MainViewModels_Registry(component));
+ * MainViewModel vm = provider.get(MainViewModel.class);
+ * }</pre>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ViewModelRegistry {
+}
@@ -0,0 +1,77 @@
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelStore
+import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.dagger.GeneratedRegistry
+import me.tatarka.injectedvmprovider.dagger.RegistryViewModelProvider
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import javax.inject.Provider
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFails
+import kotlin.test.assertSame
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner::class)
+class RegistryViewModelProviderTest {
+
+    private val store = ViewModelStore()
+    private val registry = TestRegistry()
+    private val viewModelProvider = RegistryViewModelProvider(InjectedViewModelProvider(store), registry)
+
+    @Test
+    fun `creates the ViewModel from the registry once`() {
+        val vm1 = viewModelProvider.get(ViewModel1::class.java)
+        val vm2 = viewModelProvider.get(ViewModel2::class.java)
+
+        assertSame(vm1, viewModelProvider.get(ViewModel1::class.java))
+        assertSame(vm2, viewModelProvider.get(ViewModel2::class.java))
+        assertEquals(listOf(0, 1), registry.created)
+    }
+
+    @Test
+    fun `shares the key with InjectedViewModelProvider`() {
+        val vm = viewModelProvider.get(ViewModel1::class.java)
+
+        assertSame(vm, InjectedViewModelProvider(store).get(ViewModel1::class.java, Provider { ViewModel1() }))
+    }
+
+    @Test
+    fun `ViewModel not in the registry throws IllegalArgumentException`() {
+        val error = assertFails {
+            viewModelProvider.get(ViewModel3::class.java)
+        }
+        assertEquals(IllegalArgumentException::class, error::class)
+    }
+
+    class ViewModel1 : ViewModel()
+
+    class ViewModel2 : ViewModel()
+
+    class ViewModel3 : ViewModel()
+
+    /**
+     * What the processor generates for an interface providing [ViewModel1] and [ViewModel2].
+     */
+    class TestRegistry : GeneratedRegistry {
+        val created = mutableListOf<Int>()
+
+        override fun size() = 2
+
+        override fun indexOf(viewModelClass: Class<*>) = when (viewModelClass.name) {
+            ViewModel1::class.java.name -> 0
+            ViewModel2::class.java.name -> 1
+            else -> -1
+        }
+
+        override fun create(index: Int): ViewModel {
+            created.add(index)
+            return when (index) {
+                0 -> ViewModel1()
+                1 -> ViewModel2()
+                else -> throw IndexOutOfBoundsException("No ViewModel at index $index")
+            }
+        }
+    }
+}
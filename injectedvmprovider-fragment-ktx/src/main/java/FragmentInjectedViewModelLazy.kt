@@ -4,6 +4,9 @@ import androidx.annotation.MainThread
 import androidx.fragment.app.Fragment
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.ViewModel
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 
 @MainThread
 inline fun <reified VM : ViewModel> Fragment.viewModels(noinline factory: (handle: SavedStateHandle) -> VM): Lazy<VM> {
@@ -17,3 +20,30 @@ inline fun <reified VM : ViewModel> Fragment.viewModels(
 ): Lazy<VM> {
     return viewModels(key, { arguments }, factory)
 }
+
+/**
+ * Returns the fragment's ViewModel, creating it with the given factory on the given [dispatcher]
+ * if it doesn't exist yet.
+ */
+suspend inline fun <reified VM : ViewModel> Fragment.awaitViewModel(
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): VM = withContext(Dispatchers.Main.immediate) {
+    injectedViewModelProvider { arguments }.awaitViewModel(VM::class.java, dispatcher, factory)
+}
+
+/**
+ * Returns a [Lazy] delegate to access the fragment's ViewModel which can also be created ahead of
+ * time on the given [dispatcher] by calling [AsyncViewModelLazy.start].
+ */
+@MainThread
+inline fun <reified VM : ViewModel> Fragment.viewModelsAsync(
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): AsyncViewModelLazy<VM> {
+    return AsyncViewModelLazy(
+        this,
+        { injectedViewModelProvider { arguments }.awaitViewModel(VM::class.java, dispatcher, factory) },
+        { injectedViewModelProvider { arguments }.get(VM::class.java, factory) }
+    )
+}
@@ -0,0 +1,110 @@
+package me.tatarka.injectedvmprovider
+
+import androidx.annotation.MainThread
+import androidx.fragment.app.Fragment
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.ViewModel
+
+/**
+ * Which scope creates a ViewModel obtained through [scopedViewModels] if no scope has it yet.
+ */
+enum class CreationScope {
+    /**
+     * The fragment itself.
+     */
+    FRAGMENT,
+
+    /**
+     * The parent fragment, or the activity if the fragment doesn't have a parent.
+     */
+    PARENT,
+
+    /**
+     * The activity.
+     */
+    ACTIVITY
+}
+
+/**
+ * Returns an [InjectedViewModelProvider] that looks for ViewModels in this fragment, then its parent
+ * fragments, then the activity, and creates them in the given scope if none of them have it.
+ *
+ * The scope that creates the ViewModel also owns it: it's retained as long as that scope is alive
+ * and its [SavedStateHandle] is saved with that scope.
+ *
+ * @param createIn the scope that creates ViewModels that don't exist yet
+ */
+@MainThread
+fun Fragment.scopedInjectedViewModelProvider(createIn: CreationScope = CreationScope.FRAGMENT): InjectedViewModelProvider {
+    // From this fragment out to the outermost one.
+    val fragments = generateSequence(this) { it.parentFragment }.toList()
+    val creatorIndex = when (createIn) {
+        CreationScope.FRAGMENT -> 0
+        CreationScope.PARENT -> 1
+        CreationScope.ACTIVITY -> fragments.size
+    }.coerceAtMost(fragments.size)
+    // The scopes around the creator are searched after it, from the innermost out.
+    val activity = requireActivity()
+    var provider = activity.injectedViewModelProvider { activity.intent?.extras }
+    for (i in fragments.lastIndex downTo creatorIndex) {
+        provider = fragments[i].provider().withParent(provider)
+    }
+    // The fragments inside the creator are searched before it, from this one out.
+    if (creatorIndex > 0) {
+        var children = fragments[0].provider()
+        for (i in 1 until creatorIndex) {
+            children = fragments[i].provider().withChild(children)
+        }
+        provider = provider.withChild(children)
+    }
+    return provider
+}
+
+private fun Fragment.provider(): InjectedViewModelProvider = injectedViewModelProvider { arguments }
+
+/**
+ * Returns a [Lazy] delegate to access a ViewModel shared with the fragment's parent fragments and
+ * activity. If one of them already has the ViewModel it's returned, otherwise it's created with the
+ * given factory in the given scope.
+ *
+ * ```
+ * class MyFragment : Fragment() {
+ *     @Inject lateinit var factory: SharedViewModel.Factory
+ *
+ *     // Shares the instance with other fragments using the same delegate.
+ *     val sharedViewModel by scopedViewModels(CreationScope.ACTIVITY) { handle -> factory.create(handle) }
+ * }
+ * ```
+ *
+ * @param createIn the scope that creates the ViewModel if none of them have it
+ * @param factory the factory to create the [ViewModel] using a [SavedStateHandle]
+ */
+@MainThread
+inline fun <reified VM : ViewModel> Fragment.scopedViewModels(
+    createIn: CreationScope = CreationScope.FRAGMENT,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): Lazy<VM> {
+    return lazy(mode = LazyThreadSafetyMode.NONE) {
+        scopedInjectedViewModelProvider(createIn).get(VM::class.java, factory)
+    }
+}
+
+/**
+ * Returns a [Lazy] delegate to access a ViewModel shared with the fragment's parent fragments and
+ * activity. If one of them already has the ViewModel it's returned, otherwise it's created with the
+ * given factory in the given scope.
+ *
+ * @param key a unique key for this [ViewModel]
+ * @param createIn the scope that creates the ViewModel if none of them have it
+ * @param factory the factory to create the [ViewModel] using a [SavedStateHandle]
+ */
+@MainThread
+inline fun <VM : ViewModel> Fragment.scopedViewModels(
+    key: String,
+    createIn: CreationScope = CreationScope.FRAGMENT,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): Lazy<VM> {
+    return lazy(mode = LazyThreadSafetyMode.NONE) {
+        scopedInjectedViewModelProvider(createIn).get(key, factory)
+    }
+}
@@ -8,6 +8,7 @@ import androidx.fragment.app.FragmentActivity
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelStoreOwner
 import androidx.test.core.app.ActivityScenario
 import androidx.test.core.app.ApplicationProvider
 import org.junit.Rule
@@ -16,6 +17,8 @@ import org.robolectric.RobolectricTestRunner
 import javax.inject.Provider
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
 
 @RunWith(RobolectricTestRunner::class)
 class FragmentInjectedViewModelLazyTest {
@@ -42,6 +45,85 @@ class FragmentInjectedViewModelLazyTest {
             assertEquals("arg3", fragment.lazyFactoryVM2.handle["key"])
         }
     }
+
+    @Test
+    fun `scoped ViewModel is created in the fragment`() {
+        onNestedFragments { activity, parent, child ->
+            val vm = child.scopedInjectedViewModelProvider(CreationScope.FRAGMENT).get("vm", TestViewModelProvider())
+
+            assertSame(vm, child.viewModelIn("vm"))
+            assertNull(parent.viewModelIn("vm"))
+            assertNull(activity.viewModelIn("vm"))
+        }
+    }
+
+    @Test
+    fun `scoped ViewModel is created in the parent fragment`() {
+        onNestedFragments { activity, parent, child ->
+            val vm = child.scopedInjectedViewModelProvider(CreationScope.PARENT).get("vm", TestViewModelProvider())
+
+            assertNull(child.viewModelIn("vm"))
+            assertSame(vm, parent.viewModelIn("vm"))
+            assertNull(activity.viewModelIn("vm"))
+        }
+    }
+
+    @Test
+    fun `scoped ViewModel is created in the activity if the fragment has no parent`() {
+        onNestedFragments { activity, parent, _ ->
+            val vm = parent.scopedInjectedViewModelProvider(CreationScope.PARENT).get("vm", TestViewModelProvider())
+
+            assertNull(parent.viewModelIn("vm"))
+            assertSame(vm, activity.viewModelIn("vm"))
+        }
+    }
+
+    @Test
+    fun `scoped ViewModel is created in the activity`() {
+        onNestedFragments { activity, parent, child ->
+            val vm = child.scopedInjectedViewModelProvider(CreationScope.ACTIVITY).get("vm", TestViewModelProvider())
+
+            assertNull(child.viewModelIn("vm"))
+            assertNull(parent.viewModelIn("vm"))
+            assertSame(vm, activity.viewModelIn("vm"))
+        }
+    }
+
+    @Test
+    fun `scoped ViewModel is found in the fragment before the scope it's created in`() {
+        onNestedFragments { activity, parent, child ->
+            val own = child.injectedViewModelProvider().get("vm", TestViewModelProvider())
+            parent.injectedViewModelProvider().get("vm", TestViewModelProvider())
+            activity.injectedViewModelProvider().get("vm", TestViewModelProvider())
+
+            for (createIn in CreationScope.values()) {
+                assertSame(own, child.scopedInjectedViewModelProvider(createIn).get("vm", unusedProvider))
+            }
+        }
+    }
+
+    private fun onNestedFragments(block: (FragmentActivity, Fragment, Fragment) -> Unit) {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+        scenario.onActivity { activity ->
+            val parent = activity.fragment
+            val child = Fragment()
+            parent.childFragmentManager.beginTransaction()
+                .add(child, "child")
+                .commitNow()
+            block(activity, parent, child)
+        }
+    }
+
+    private val unusedProvider = Provider<TestViewModel> { error("not created") }
+
+    /**
+     * Returns the ViewModel for the key in the owner's own store, without creating it.
+     */
+    private fun ViewModelStoreOwner.viewModelIn(key: String): TestViewModel? {
+        var found = true
+        val vm = injectedViewModelProvider().get(key, Provider { found = false; TestViewModel("probe") })
+        return if (found) vm else null
+    }
 }
 
 class TestActivity : FragmentActivity() {
@@ -0,0 +1,219 @@
+package me.tatarka.injectedvmprovider
+
+import androidx.activity.ComponentActivity
+import androidx.annotation.MainThread
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelStoreOwner
+import androidx.lifecycle.lifecycleScope
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asExecutor
+import kotlinx.coroutines.async
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
+import javax.inject.Provider
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Returns an existing ViewModel or creates a new one on the given [dispatcher], suspending until
+ * it's in the store. See [InjectedViewModelProvider.getAsync].
+ *
+ * Cancelling the caller only stops waiting. The ViewModel is still created and stored, so a later
+ * call picks it up instead of creating it again.
+ */
+suspend fun <VM : ViewModel> InjectedViewModelProvider.awaitViewModel(
+    viewModelClass: Class<VM>,
+    provider: Provider<VM>,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default
+): VM = awaitCallback { callback ->
+    getAsync(viewModelClass, provider, dispatcher.asExecutor(), callback)
+}
+
+/**
+ * Returns an existing ViewModel or creates a new one on the given [dispatcher], suspending until
+ * it's in the store. See [InjectedViewModelProvider.getAsync].
+ *
+ * Cancelling the caller only stops waiting. The ViewModel is still created and stored, so a later
+ * call picks it up instead of creating it again.
+ */
+suspend fun <VM : ViewModel> InjectedViewModelProvider.awaitViewModel(
+    key: String,
+    provider: Provider<VM>,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default
+): VM = awaitCallback { callback ->
+    getAsync(key, provider, dispatcher.asExecutor(), callback)
+}
+
+/**
+ * Returns an existing ViewModel or creates a new one with a [SavedStateHandle] on the given
+ * [dispatcher], suspending until it's in the store. See [InjectedViewModelProvider.getAsync].
+ *
+ * Cancelling the caller only stops waiting. The ViewModel is still created and stored, so a later
+ * call picks it up instead of creating it again.
+ */
+suspend fun <VM : ViewModel> InjectedViewModelProvider.awaitViewModel(
+    viewModelClass: Class<VM>,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    factory: (handle: SavedStateHandle) -> VM
+): VM = awaitCallback { callback ->
+    getAsync(viewModelClass, SavedStateFactory(factory), dispatcher.asExecutor(), callback)
+}
+
+/**
+ * Returns an existing ViewModel or creates a new one with a [SavedStateHandle] on the given
+ * [dispatcher], suspending until it's in the store. See [InjectedViewModelProvider.getAsync].
+ *
+ * Cancelling the caller only stops waiting. The ViewModel is still created and stored, so a later
+ * call picks it up instead of creating it again.
+ */
+suspend fun <VM : ViewModel> InjectedViewModelProvider.awaitViewModel(
+    key: String,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    factory: (handle: SavedStateHandle) -> VM
+): VM = awaitCallback { callback ->
+    getAsync(key, SavedStateFactory(factory), dispatcher.asExecutor(), callback)
+}
+
+/**
+ * Returns the ViewModelStoreOwner's ViewModel, creating it with the given provider on the given
+ * [dispatcher] if it doesn't exist yet.
+ *
+ * ```
+ * class MyFragment @Inject constructor(private val provider: Provider<MyViewModel>) : Fragment() {
+ *     override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+ *         viewLifecycleOwner.lifecycleScope.launch {
+ *             val myViewModel = awaitViewModel(provider)
+ *         }
+ *     }
+ * }
+ * ```
+ */
+suspend inline fun <reified VM : ViewModel> ViewModelStoreOwner.awaitViewModel(
+    provider: Provider<VM>,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default
+): VM = withContext(Dispatchers.Main.immediate) {
+    injectedViewModelProvider().awaitViewModel(VM::class.java, provider, dispatcher)
+}
+
+/**
+ * Returns the activity's ViewModel, creating it with the given factory on the given [dispatcher]
+ * if it doesn't exist yet.
+ *
+ * ```
+ * class MyComponentActivity : ComponentActivity() {
+ *     lateinit var factory: MyViewModel.Factory
+ *
+ *     override fun onCreate(savedInstanceState: Bundle?) {
+ *         super.onCreate(savedInstanceState)
+ *         lifecycleScope.launch {
+ *             val myViewModel = awaitViewModel { handle -> factory.create(handle) }
+ *         }
+ *     }
+ * }
+ * ```
+ */
+suspend inline fun <reified VM : ViewModel> ComponentActivity.awaitViewModel(
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): VM = withContext(Dispatchers.Main.immediate) {
+    injectedViewModelProvider { intent?.extras }.awaitViewModel(VM::class.java, dispatcher, factory)
+}
+
+/**
+ * Returns a [Lazy] delegate to access the ViewModelStoreOwner's ViewModel which can also be created
+ * ahead of time on the given [dispatcher]. Call [AsyncViewModelLazy.start] as early as possible, for
+ * example before inflating the views, and the ViewModel will be created in parallel.
+ *
+ * ```
+ * class MyComponentActivity : ComponentActivity() {
+ *     @Inject lateinit var factory: MyViewModel.Factory
+ *
+ *     private val myViewModelLazy = viewModelsAsync { handle -> factory.create(handle) }
+ *     private val myViewModel by myViewModelLazy
+ *
+ *     override fun onCreate(savedInstanceState: Bundle?) {
+ *         inject()
+ *         super.onCreate(savedInstanceState)
+ *         myViewModelLazy.start()
+ *         setContentView(R.layout.activity_main)
+ *         // Waits for it if it's not done yet.
+ *         myViewModel.doSomething()
+ *     }
+ * }
+ * ```
+ */
+@MainThread
+inline fun <reified VM : ViewModel> ComponentActivity.viewModelsAsync(
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    noinline factory: (handle: SavedStateHandle) -> VM
+): AsyncViewModelLazy<VM> {
+    return AsyncViewModelLazy(
+        this,
+        { injectedViewModelProvider { intent?.extras }.awaitViewModel(VM::class.java, dispatcher, factory) },
+        { injectedViewModelProvider { intent?.extras }.get(VM::class.java, factory) }
+    )
+}
+
+/**
+ * A [Lazy] ViewModel that can also be created asynchronously. Accessing [value] returns the
+ * ViewModel, waiting for it if it's being created asynchronously or creating it on the main thread
+ * otherwise.
+ *
+ * @param lifecycleOwner the owner whose lifecycle cancels waiting in [start]
+ * @param load gets the ViewModel asynchronously
+ * @param get gets the ViewModel synchronously, for the same key as [load]
+ */
+class AsyncViewModelLazy<VM : ViewModel>(
+    private val lifecycleOwner: LifecycleOwner,
+    private val load: suspend () -> VM,
+    private val get: () -> VM
+) : Lazy<VM> {
+    private var deferred: Deferred<VM>? = null
+    private var cached: VM? = null
+
+    /**
+     * Starts creating the ViewModel if it hasn't been already. Waiting on the result is cancelled
+     * when the owner is destroyed.
+     */
+    @MainThread
+    fun start(): Deferred<VM> {
+        return deferred ?: lifecycleOwner.lifecycleScope.async(Dispatchers.Main.immediate) {
+            load()
+        }.also { deferred = it }
+    }
+
+    /**
+     * Starts creating the ViewModel if it hasn't been already and suspends until it's created.
+     */
+    suspend fun await(): VM = withContext(Dispatchers.Main.immediate) { start().await() }
+
+    override val value: VM
+        @MainThread
+        get() = cached ?: get().also { cached = it }
+
+    override fun isInitialized(): Boolean = cached != null
+}
+
+private suspend fun <VM : ViewModel> awaitCallback(start: (ViewModelCallback<VM>) -> Unit): VM {
+    return withContext(Dispatchers.Main.immediate) {
+        suspendCancellableCoroutine<VM> { continuation ->
+            start(object : ViewModelCallback<VM> {
+                override fun onViewModel(viewModel: VM) {
+                    if (continuation.isActive) {
+                        continuation.resume(viewModel)
+                    }
+                }
+
+                override fun onError(error: Throwable) {
+                    if (continuation.isActive) {
+                        continuation.resumeWithException(error)
+                    }
+                }
+            })
+        }
+    }
+}
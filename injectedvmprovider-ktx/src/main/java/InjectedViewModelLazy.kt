@@ -40,7 +40,7 @@ inline fun <reified VM : ViewModel> ViewModelStoreOwner.viewModel(provider: Prov
 @MainThread
 inline fun <reified VM : ViewModel> ViewModelStoreOwner.viewModels(provider: Provider<VM>): Lazy<VM> {
     return lazy(mode = LazyThreadSafetyMode.NONE) {
-        InjectedViewModelProvider(this).get(VM::class.java, provider)
+        injectedViewModelProvider().get(VM::class.java, provider)
     }
 }
 
@@ -64,7 +64,7 @@ inline fun <reified VM : ViewModel> ViewModelStoreOwner.viewModels(provider: Pro
 @Deprecated(message = "Use viewModels() instead", replaceWith = ReplaceWith("viewModels(factory)"))
 inline fun <reified VM : ViewModel> ViewModelStoreOwner.viewModel(noinline factory: () -> VM): Lazy<VM> {
     return lazy(mode = LazyThreadSafetyMode.NONE) {
-        InjectedViewModelProvider(this).get(VM::class.java, factory)
+        injectedViewModelProvider().get(VM::class.java, factory)
     }
 }
 
@@ -90,7 +90,7 @@ inline fun <O, reified VM : ViewModel> O.viewModels(
     noinline factory: (handle: SavedStateHandle) -> VM
 ): Lazy<VM> where O : ViewModelStoreOwner, O : SavedStateRegistryOwner {
     return lazy(mode = LazyThreadSafetyMode.NONE) {
-        InjectedViewModelProvider(this, defaultArgs()).get(VM::class.java, factory)
+        injectedViewModelProvider { defaultArgs() }.get(VM::class.java, factory)
     }
 }
 
@@ -118,7 +118,7 @@ inline fun <O, VM : ViewModel> O.viewModels(
     noinline factory: (handle: SavedStateHandle) -> VM
 ): Lazy<VM> where O : ViewModelStoreOwner, O : SavedStateRegistryOwner {
     return lazy(mode = LazyThreadSafetyMode.NONE) {
-        InjectedViewModelProvider(this, defaultArgs()).get(key, factory)
+        injectedViewModelProvider(defaultArgs).get(key, factory)
     }
 }
 
@@ -0,0 +1,117 @@
+@file:JvmName("InjectedViewModelProviders")
+
+package me.tatarka.injectedvmprovider
+
+import android.os.Bundle
+import androidx.annotation.MainThread
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleEventObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelStore
+import androidx.lifecycle.ViewModelStoreBridge
+import androidx.lifecycle.ViewModelStoreOwner
+import androidx.savedstate.SavedStateRegistry
+import androidx.savedstate.SavedStateRegistryOwner
+
+private const val KEY = "me.tatarka.injectedvmprovider.SharedProviders"
+
+/**
+ * Returns the [InjectedViewModelProvider] shared by everything that uses this owner's
+ * [ViewModelStore], creating it the first time. The `viewModels` delegates use this so that an owner
+ * with several ViewModels only creates one provider.
+ */
+@MainThread
+fun ViewModelStoreOwner.injectedViewModelProvider(): InjectedViewModelProvider {
+    return sharedProviders(viewModelStore).provider
+}
+
+/**
+ * Returns an [InjectedViewModelProvider] for this owner's [ViewModelStore] and
+ * [SavedStateRegistry] that creates each [androidx.lifecycle.SavedStateHandle] with the given
+ * [defaultArgs]. If there are none, this is the provider shared by everything that uses the owner,
+ * which is created the first time. Otherwise it's a lightweight copy of the shared provider with
+ * the given arguments, so each caller gets its own arguments. The last copy is kept and returned
+ * again as long as [defaultArgs] returns the same [Bundle] instance.
+ *
+ * The shared provider is released when the owner is destroyed, so it never outlives the registry it
+ * was created with. A recreated owner gets a new one.
+ *
+ * @param defaultArgs the default arguments to create each [androidx.lifecycle.SavedStateHandle]
+ * with. This is called every time.
+ */
+@MainThread
+fun <O> O.injectedViewModelProvider(
+    defaultArgs: () -> Bundle?
+): InjectedViewModelProvider where O : ViewModelStoreOwner, O : SavedStateRegistryOwner {
+    val providers = sharedProviders(viewModelStore)
+    val provider = sharedSavedStateProvider(providers)
+    val args = defaultArgs() ?: return provider
+    val argsProvider = providers.argsProvider
+    if (argsProvider != null && providers.args === args) {
+        return argsProvider
+    }
+    val newArgsProvider = provider.withDefaultArgs(args)
+    providers.args = args
+    providers.argsProvider = newArgsProvider
+    return newArgsProvider
+}
+
+private fun <O> O.sharedSavedStateProvider(
+    providers: SharedProviders
+): InjectedViewModelProvider where O : ViewModelStoreOwner, O : SavedStateRegistryOwner {
+    val registry = savedStateRegistry
+    val provider = providers.savedStateProvider
+    if (provider != null && providers.registry === registry) {
+        return provider
+    }
+    val newProvider = InjectedViewModelProvider(viewModelStore, registry, null)
+    providers.savedStateProvider = newProvider
+    providers.registry = registry
+    providers.args = null
+    providers.argsProvider = null
+    lifecycle.addObserver(object : LifecycleEventObserver {
+        override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                source.lifecycle.removeObserver(this)
+                if (providers.registry === registry) {
+                    providers.savedStateProvider = null
+                    providers.registry = null
+                    providers.args = null
+                    providers.argsProvider = null
+                }
+            }
+        }
+    })
+    return newProvider
+}
+
+private fun sharedProviders(store: ViewModelStore): SharedProviders {
+    var providers = ViewModelStoreBridge.get(store, KEY) as SharedProviders?
+    if (providers == null) {
+        providers = SharedProviders(store)
+        ViewModelStoreBridge.put(store, KEY, providers)
+    }
+    return providers
+}
+
+/**
+ * Holds the shared providers in the [ViewModelStore] they are for, so they go away with it.
+ */
+private class SharedProviders(store: ViewModelStore) : ViewModel() {
+    val provider = InjectedViewModelProvider(store)
+
+    /**
+     * Bound to the registry of the current owner instance, which may be recreated while the store
+     * is retained.
+     */
+    var savedStateProvider: InjectedViewModelProvider? = null
+    var registry: SavedStateRegistry? = null
+
+    /**
+     * The last copy of [savedStateProvider] with default args, kept so a caller that passes the same
+     * args again doesn't allocate another one.
+     */
+    var args: Bundle? = null
+    var argsProvider: InjectedViewModelProvider? = null
+}
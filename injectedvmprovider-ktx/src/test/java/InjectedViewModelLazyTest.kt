@@ -2,19 +2,30 @@ package me.tatarka.injectedvmprovider
 
 import android.content.Intent
 import android.os.Bundle
+import android.os.Looper
 import androidx.activity.ComponentActivity
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.ViewModel
+import androidx.lifecycle.lifecycleScope
 import androidx.test.core.app.ActivityScenario
 import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.launch
 import org.junit.Rule
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import javax.inject.Provider
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
 
 @RunWith(RobolectricTestRunner::class)
 class InjectedViewModelLazyTest {
@@ -39,6 +50,118 @@ class InjectedViewModelLazyTest {
             assertEquals("arg3", activity.lazyFactoryVM2.handle["key"])
         }
     }
+
+    @Test
+    fun `awaitViewModel creates the ViewModel on the dispatcher`() {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+
+        scenario.onActivity { activity ->
+            var vm: TestViewModel2? = null
+            var createdOn: Thread? = null
+            val executor = Executors.newSingleThreadExecutor()
+            activity.lifecycleScope.launch {
+                vm = activity.awaitViewModel(executor.asCoroutineDispatcher()) { handle ->
+                    createdOn = Thread.currentThread()
+                    TestViewModel2(handle)
+                }
+            }
+            executor.shutdown()
+            executor.awaitTermination(1, TimeUnit.SECONDS)
+            shadowOf(Looper.getMainLooper()).idle()
+
+            assertNotNull(vm)
+            assertNotSame(Looper.getMainLooper().thread, createdOn)
+            assertSame(vm, activity.injectedViewModelProvider { null }.get(TestViewModel2::class.java) { handle ->
+                TestViewModel2(handle)
+            })
+        }
+    }
+
+    @Test
+    fun `awaitViewModel with a provider creates the ViewModel on the dispatcher`() {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+
+        scenario.onActivity { activity ->
+            var vm: TestViewModel? = null
+            var createdOn: Thread? = null
+            val executor = Executors.newSingleThreadExecutor()
+            activity.lifecycleScope.launch {
+                vm = activity.awaitViewModel(Provider {
+                    createdOn = Thread.currentThread()
+                    TestViewModel("async")
+                }, executor.asCoroutineDispatcher())
+            }
+            executor.shutdown()
+            executor.awaitTermination(1, TimeUnit.SECONDS)
+            shadowOf(Looper.getMainLooper()).idle()
+
+            assertEquals("async", vm!!.arg)
+            assertNotSame(Looper.getMainLooper().thread, createdOn)
+            assertSame(vm, activity.injectedViewModelProvider().get(TestViewModel::class.java, TestViewModelProvider()))
+        }
+    }
+
+    @Test
+    @Suppress("EXPERIMENTAL_API_USAGE") // getCompleted
+    fun `started async lazy returns the ViewModel it created`() {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+
+        scenario.onActivity { activity ->
+            var created = 0
+            val lazy = activity.viewModelsAsync(Dispatchers.Unconfined) { handle ->
+                created += 1
+                TestViewModel2(handle)
+            }
+            lazy.start()
+            shadowOf(Looper.getMainLooper()).idle()
+
+            assertSame(lazy.start().getCompleted(), lazy.value)
+            assertEquals(1, created)
+        }
+    }
+
+    @Test
+    fun `delegates share one provider per owner until it is recreated`() {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+
+        lateinit var provider: InjectedViewModelProvider
+        scenario.onActivity { activity ->
+            provider = activity.injectedViewModelProvider { null }
+            assertSame(provider, activity.injectedViewModelProvider { null })
+            assertSame(activity.injectedViewModelProvider(), activity.injectedViewModelProvider())
+        }
+        scenario.recreate()
+        scenario.onActivity { activity ->
+            assertNotSame(provider, activity.injectedViewModelProvider { null })
+        }
+    }
+
+    @Test
+    fun `same default args reuse the provider created for them`() {
+        val scenario: ActivityScenario<TestActivity> = ActivityScenario.launch(TestActivity::class.java)
+
+        scenario.onActivity { activity ->
+            val args = Bundle()
+            val providers = mutableSetOf<InjectedViewModelProvider>()
+            repeat(3) {
+                providers += activity.injectedViewModelProvider { args }
+            }
+            assertEquals(1, providers.size)
+
+            providers += activity.injectedViewModelProvider { Bundle() }
+            assertEquals(2, providers.size)
+        }
+    }
+
+    @Test
+    fun `delegates of one owner use their own default args`() {
+        val scenario: ActivityScenario<ArgsActivity> = ActivityScenario.launch(ArgsActivity::class.java)
+
+        scenario.onActivity { activity ->
+            assertEquals("first", activity.first.handle.get<String>("arg"))
+            assertEquals("second", activity.second.handle.get<String>("arg"))
+        }
+    }
 }
 
 class TestActivity : ComponentActivity() {
@@ -61,6 +184,15 @@ class TestActivity : ComponentActivity() {
     }
 }
 
+class ArgsActivity : ComponentActivity() {
+    val first by viewModels("first", { Bundle().apply { putString("arg", "first") } }) { handle ->
+        TestViewModel2(handle)
+    }
+    val second by viewModels("second", { Bundle().apply { putString("arg", "second") } }) { handle ->
+        TestViewModel2(handle)
+    }
+}
+
 class TestViewModel(val arg: String) : ViewModel()
 
 class TestViewModel2(val handle: SavedStateHandle) : ViewModel()
@@ -0,0 +1,144 @@
+package me.tatarka.injectedvmprovider.lint
+
+import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Implementation
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.JavaContext
+import com.android.tools.lint.detector.api.LintFix
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.SourceCodeScanner
+import com.android.tools.lint.detector.api.isKotlin
+import com.intellij.psi.PsiClass
+import com.intellij.psi.PsiClassOwner
+import com.intellij.psi.PsiClassType
+import com.intellij.psi.PsiMethod
+import com.intellij.psi.PsiTypeParameter
+import com.intellij.psi.util.PsiUtil
+import org.jetbrains.kotlin.psi.KtLambdaArgument
+import org.jetbrains.uast.UCallExpression
+import org.jetbrains.uast.UCallableReferenceExpression
+import org.jetbrains.uast.UExpression
+import org.jetbrains.uast.ULambdaExpression
+import org.jetbrains.uast.UObjectLiteralExpression
+import org.jetbrains.uast.skipParenthesizedExprDown
+
+/**
+ * Flags providers and factories whose class is used as the ViewModel key but is local or
+ * anonymous, which throws an [IllegalArgumentException] at runtime.
+ */
+class AnonymousProviderDetector : Detector(), SourceCodeScanner {
+
+    override fun getApplicableMethodNames(): List<String> = listOf("get", "getAsync", "add")
+
+    override fun visitMethodCall(context: JavaContext, node: UCallExpression, method: PsiMethod) {
+        val evaluator = context.evaluator
+        if (!evaluator.isMemberInClass(method, INJECTED_VIEW_MODEL_PROVIDER) && !evaluator.isMemberInClass(method, PREWARM_BATCH)) {
+            return
+        }
+        val firstParameter = method.parameterList.parameters.firstOrNull() ?: return
+        val firstType = firstParameter.type as? PsiClassType ?: return
+        val keyedByProvider = firstType.rawType().canonicalText == PROVIDER
+        val keyedByFactory = firstType.resolve() is PsiTypeParameter
+        if (!keyedByProvider && !keyedByFactory) {
+            return
+        }
+        val argument = node.valueArguments.firstOrNull() ?: return
+        if (!isLocalOrAnonymous(argument)) {
+            return
+        }
+        context.report(
+            ISSUE, node, context.getLocation(argument),
+            "The ViewModel key is derived from this ${if (keyedByProvider) "provider" else "factory"}'s class, which is local or anonymous",
+            keyFix(context, node, argument, keyedByProvider)
+        )
+    }
+
+    private fun isLocalOrAnonymous(argument: UExpression): Boolean {
+        return when (val expression = argument.skipParenthesizedExprDown()) {
+            is ULambdaExpression, is UCallableReferenceExpression, is UObjectLiteralExpression -> true
+            is UCallExpression -> {
+                val resolved = expression.resolve()
+                val psiClass: PsiClass? = if (resolved != null && resolved.isConstructor) resolved.containingClass else expression.classReference?.resolve() as? PsiClass
+                when {
+                    psiClass == null -> false
+                    // A Kotlin SAM constructor, like Provider { ... }
+                    psiClass.isInterface -> expression.valueArguments.singleOrNull()?.skipParenthesizedExprDown() is ULambdaExpression
+                    else -> PsiUtil.isLocalOrAnonymousClass(psiClass)
+                }
+            }
+            else -> false
+        }
+    }
+
+    /**
+     * Passes the ViewModel class (for providers) or the ViewModel's name (for factories) as the key
+     * instead.
+     */
+    private fun keyFix(context: JavaContext, node: UCallExpression, argument: UExpression, keyedByProvider: Boolean): LintFix? {
+        val viewModelType = viewModelType(node, argument) ?: return null
+        val viewModelClass = viewModelType.resolve() ?: return null
+        val kotlin = isKotlin(node.sourcePsi)
+        val key = when {
+            keyedByProvider && kotlin -> "${className(context, viewModelClass)}::class.java"
+            keyedByProvider -> "${className(context, viewModelClass)}.class"
+            else -> "\"${viewModelClass.qualifiedName}\""
+        }
+        val fix = LintFix.create()
+            .name(if (keyedByProvider) "Key by the ViewModel class" else "Key by the ViewModel name")
+            .replace()
+        if (argument.sourcePsi?.parent is KtLambdaArgument) {
+            // A trailing lambda, pass the key in parentheses before it.
+            val methodIdentifier = node.methodIdentifier ?: return null
+            fix.range(context.getLocation(methodIdentifier)).end().with("($key)")
+        } else {
+            fix.range(context.getLocation(argument)).beginning().with("$key, ")
+        }
+        return fix.build()
+    }
+
+    /**
+     * Returns the simple name of the class if it's in scope in the file, its qualified name
+     * otherwise.
+     */
+    private fun className(context: JavaContext, psiClass: PsiClass): String {
+        val qualifiedName = psiClass.qualifiedName ?: return psiClass.name ?: ""
+        val file = context.uastFile ?: return qualifiedName
+        val samePackage = psiClass.containingClass == null &&
+                (psiClass.containingFile as? PsiClassOwner)?.packageName == file.packageName
+        val imported = file.imports.any { it.importReference?.asRenderString() == qualifiedName }
+        return if (samePackage || imported) psiClass.name ?: qualifiedName else qualifiedName
+    }
+
+    /**
+     * Returns the ViewModel type, either from what `get` returns or from the type argument of the
+     * provider.
+     */
+    private fun viewModelType(node: UCallExpression, argument: UExpression): PsiClassType? {
+        val returnType = node.returnType
+        if (returnType is PsiClassType && returnType.canonicalText != PREWARM_BATCH) {
+            return returnType
+        }
+        val argumentType = argument.getExpressionType() as? PsiClassType ?: return null
+        return argumentType.parameters.firstOrNull() as? PsiClassType
+    }
+
+    companion object {
+        @JvmField
+        val ISSUE = Issue.create(
+            id = "AnonymousViewModelProvider",
+            briefDescription = "Local or anonymous ViewModel provider",
+            explanation = """
+                When no key is given, the ViewModel is keyed by the class of the provider or \
+                factory. Local and anonymous classes, including lambdas, don't have a stable name, \
+                so this throws an `IllegalArgumentException` at runtime. Pass the ViewModel class \
+                or a key instead.
+                """,
+            category = Category.CORRECTNESS,
+            priority = 8,
+            severity = Severity.ERROR,
+            implementation = Implementation(AnonymousProviderDetector::class.java, Scope.JAVA_FILE_SCOPE)
+        )
+    }
+}
@@ -0,0 +1,114 @@
+package me.tatarka.injectedvmprovider.lint
+
+import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Implementation
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.JavaContext
+import com.android.tools.lint.detector.api.LintFix
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.SourceCodeScanner
+import com.android.tools.lint.detector.api.isKotlin
+import com.intellij.psi.PsiClassType
+import com.intellij.psi.PsiMethod
+import com.intellij.psi.PsiType
+import org.jetbrains.uast.UCallExpression
+import org.jetbrains.uast.UExpression
+import org.jetbrains.uast.ULiteralExpression
+import org.jetbrains.uast.UPolyadicExpression
+import org.jetbrains.uast.UastBinaryOperator
+import org.jetbrains.uast.skipParenthesizedExprDown
+
+/**
+ * Flags `get` calls whose key is built from a constant prefix and an id on every call, like one
+ * ViewModel per list item. Each call builds a new key string and every id stays in the store until
+ * the scope is destroyed.
+ */
+class DynamicKeyDetector : Detector(), SourceCodeScanner {
+
+    override fun getApplicableMethodNames(): List<String> = listOf("get")
+
+    override fun visitMethodCall(context: JavaContext, node: UCallExpression, method: PsiMethod) {
+        if (!context.evaluator.isMemberInClass(method, INJECTED_VIEW_MODEL_PROVIDER)) {
+            return
+        }
+        val parameters = method.parameterList.parameters
+        if (parameters.isEmpty() || parameters[0].type.canonicalText != "java.lang.String") {
+            return
+        }
+        // Only Provider and FactoryCreator ViewModels can be kept in a ViewModelPool.
+        val factoryType = (parameters.last().type as? PsiClassType)?.rawType()?.canonicalText
+        if (factoryType != PROVIDER && factoryType != FACTORY_CREATOR) {
+            return
+        }
+        val key = node.valueArguments.firstOrNull() ?: return
+        val concatenation = key.skipParenthesizedExprDown() as? UPolyadicExpression ?: return
+        if (concatenation.operator != UastBinaryOperator.PLUS || concatenation.operands.size != 2) {
+            return
+        }
+        val prefix = (concatenation.operands[0] as? ULiteralExpression)?.value as? String ?: return
+        val id = concatenation.operands[1]
+        if (id.evaluate() != null) {
+            return
+        }
+        context.report(
+            ISSUE, node, context.getLocation(key),
+            "This key is built on every call, use a `ViewModelPool` instead",
+            poolFix(context, node, key, prefix, id)
+        )
+    }
+
+    /**
+     * Gets the ViewModel from a pool named after the prefix, keyed by the id.
+     */
+    private fun poolFix(context: JavaContext, node: UCallExpression, key: UExpression, prefix: String, id: UExpression): LintFix? {
+        val methodIdentifier = node.methodIdentifier ?: return null
+        val idText = id.sourcePsi?.text ?: return null
+        val kotlin = isKotlin(node.sourcePsi)
+        val poolKey = when (id.getExpressionType()) {
+            PsiType.LONG -> idText
+            PsiType.INT, PsiType.SHORT, PsiType.BYTE -> if (kotlin) "$idText.toLong()" else idText
+            else -> when {
+                id.getExpressionType()?.canonicalText == "java.lang.String" -> idText
+                kotlin -> "$idText.toString()"
+                else -> "String.valueOf($idText)"
+            }
+        }
+        val poolName = "\"" + prefix.replace("\\", "\\\\").replace("\"", "\\\"").replace("$", if (kotlin) "\\$" else "$") + "\""
+        return LintFix.create().name("Use a ViewModelPool").composite(
+            LintFix.create()
+                .replace()
+                .range(context.getLocation(methodIdentifier))
+                .beginning()
+                .with("getPool($poolName, $DEFAULT_POOL_SIZE).")
+                .build(),
+            LintFix.create()
+                .replace()
+                .range(context.getLocation(key))
+                .all()
+                .with(poolKey)
+                .build()
+        )
+    }
+
+    companion object {
+        private const val DEFAULT_POOL_SIZE = 16
+
+        @JvmField
+        val ISSUE = Issue.create(
+            id = "DynamicViewModelKey",
+            briefDescription = "ViewModel key built on every call",
+            explanation = """
+                Building the key for a ViewModel from an id allocates a new string on every call, \
+                and keeps a ViewModel in the store for every id until the scope is destroyed. A \
+                `ViewModelPool` from `InjectedViewModelProvider.getPool` can be keyed by a `long` \
+                id without allocating, and only keeps the most recently used ViewModels.
+                """,
+            category = Category.PERFORMANCE,
+            priority = 4,
+            severity = Severity.WARNING,
+            implementation = Implementation(DynamicKeyDetector::class.java, Scope.JAVA_FILE_SCOPE)
+        )
+    }
+}
@@ -0,0 +1,27 @@
+package me.tatarka.injectedvmprovider.lint
+
+import com.android.tools.lint.client.api.IssueRegistry
+import com.android.tools.lint.detector.api.CURRENT_API
+import com.android.tools.lint.detector.api.Issue
+
+internal const val INJECTED_VIEW_MODEL_PROVIDER = "me.tatarka.injectedvmprovider.InjectedViewModelProvider"
+internal const val PREWARM_BATCH = "me.tatarka.injectedvmprovider.PrewarmBatch"
+internal const val INJECTED_VIEW_MODEL_PROVIDERS = "me.tatarka.injectedvmprovider.InjectedViewModelProviders"
+internal const val PROVIDER = "javax.inject.Provider"
+internal const val FACTORY_CREATOR = "me.tatarka.injectedvmprovider.FactoryCreator"
+internal const val VIEW_MODEL_STORE = "androidx.lifecycle.ViewModelStore"
+
+/**
+ * The lint checks shipped with injectedvmprovider.
+ */
+class InjectedViewModelIssueRegistry : IssueRegistry() {
+    override val issues: List<Issue>
+        get() = listOf(
+            AnonymousProviderDetector.ISSUE,
+            ProviderConstructionDetector.ISSUE,
+            DynamicKeyDetector.ISSUE
+        )
+
+    override val api: Int
+        get() = CURRENT_API
+}
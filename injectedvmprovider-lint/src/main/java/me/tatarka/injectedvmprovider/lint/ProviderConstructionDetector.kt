@@ -0,0 +1,104 @@
+package me.tatarka.injectedvmprovider.lint
+
+import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Implementation
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.JavaContext
+import com.android.tools.lint.detector.api.LintFix
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.SourceCodeScanner
+import com.android.tools.lint.detector.api.isKotlin
+import com.intellij.psi.PsiMethod
+import org.jetbrains.uast.UCallExpression
+import org.jetbrains.uast.UClass
+import org.jetbrains.uast.UElement
+import org.jetbrains.uast.ULoopExpression
+import org.jetbrains.uast.UMethod
+
+/**
+ * Flags an `InjectedViewModelProvider` that is constructed in a loop or in a method that binds a
+ * view, where a new one would be built for every lookup.
+ */
+class ProviderConstructionDetector : Detector(), SourceCodeScanner {
+
+    override fun getApplicableConstructorTypes(): List<String> = listOf(INJECTED_VIEW_MODEL_PROVIDER)
+
+    override fun visitConstructor(context: JavaContext, node: UCallExpression, constructor: PsiMethod) {
+        val where = repeatedContext(node) ?: return
+        context.report(
+            ISSUE, node, context.getLocation(node),
+            "A new `InjectedViewModelProvider` is created $where",
+            sharedProviderFix(context, node, constructor)
+        )
+    }
+
+    /**
+     * Returns a description of where the constructor call is repeated, or null if it isn't.
+     */
+    private fun repeatedContext(node: UCallExpression): String? {
+        var parent: UElement? = node.uastParent
+        while (parent != null && parent !is UClass) {
+            if (parent is ULoopExpression) {
+                return "on every iteration of a loop"
+            }
+            if (parent is UMethod) {
+                return if (isBindMethod(parent.name)) "every time `${parent.name}` is called" else null
+            }
+            parent = parent.uastParent
+        }
+        return null
+    }
+
+    private fun isBindMethod(name: String): Boolean =
+        name == "getView" || name.startsWith("onBind") || name.startsWith("bind")
+
+    /**
+     * Replaces the constructor with the provider shared by the owner from injectedvmprovider-ktx,
+     * if it's available.
+     */
+    private fun sharedProviderFix(context: JavaContext, node: UCallExpression, constructor: PsiMethod): LintFix? {
+        if (context.evaluator.findClass(INJECTED_VIEW_MODEL_PROVIDERS) == null) {
+            return null
+        }
+        val parameters = constructor.parameterList.parameters
+        if (parameters.isEmpty() || parameters[0].type.canonicalText == VIEW_MODEL_STORE) {
+            return null
+        }
+        val arguments = node.valueArguments
+        val owner = arguments.getOrNull(0)?.sourcePsi?.text ?: return null
+        val defaultArgs = arguments.getOrNull(1)?.sourcePsi?.text
+        val replacement = if (isKotlin(node.sourcePsi)) {
+            if (defaultArgs == null) "$owner.injectedViewModelProvider()" else "$owner.injectedViewModelProvider { $defaultArgs }"
+        } else {
+            if (defaultArgs == null) "$INJECTED_VIEW_MODEL_PROVIDERS.injectedViewModelProvider($owner)"
+            else "$INJECTED_VIEW_MODEL_PROVIDERS.injectedViewModelProvider($owner, () -> $defaultArgs)"
+        }
+        return LintFix.create()
+            .name("Use the shared provider")
+            .replace()
+            .range(context.getLocation(node))
+            .all()
+            .with(replacement)
+            .shortenNames()
+            .build()
+    }
+
+    companion object {
+        @JvmField
+        val ISSUE = Issue.create(
+            id = "RepeatedInjectedViewModelProvider",
+            briefDescription = "InjectedViewModelProvider created per lookup",
+            explanation = """
+                Creating an `InjectedViewModelProvider` in a loop or in a method that binds a \
+                view allocates a new provider for every lookup. Create it once per scope, or use \
+                the provider shared by the `ViewModelStoreOwner` from injectedvmprovider-ktx.
+                """,
+            category = Category.PERFORMANCE,
+            priority = 5,
+            severity = Severity.WARNING,
+            implementation = Implementation(ProviderConstructionDetector::class.java, Scope.JAVA_FILE_SCOPE)
+        )
+    }
+}
@@ -0,0 +1,224 @@
+import com.android.tools.lint.checks.infrastructure.LintDetectorTest
+import com.android.tools.lint.checks.infrastructure.TestFile
+import com.android.tools.lint.checks.infrastructure.TestFiles.java
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Issue
+import me.tatarka.injectedvmprovider.lint.AnonymousProviderDetector
+import me.tatarka.injectedvmprovider.lint.DynamicKeyDetector
+import me.tatarka.injectedvmprovider.lint.InjectedViewModelIssueRegistry
+import me.tatarka.injectedvmprovider.lint.ProviderConstructionDetector
+import kotlin.test.assertEquals
+
+class InjectedViewModelDetectorTest : LintDetectorTest() {
+
+    override fun getDetector(): Detector = AnonymousProviderDetector()
+
+    override fun getIssues(): List<Issue> = InjectedViewModelIssueRegistry().issues
+
+    fun `test registry contains all issues`() {
+        assertEquals(
+            listOf(AnonymousProviderDetector.ISSUE, ProviderConstructionDetector.ISSUE, DynamicKeyDetector.ISSUE),
+            InjectedViewModelIssueRegistry().issues
+        )
+    }
+
+    fun `test anonymous provider passed to get is an error`() {
+        lint().files(
+            *STUBS,
+            java(
+                """
+                package test;
+
+                import javax.inject.Provider;
+                import me.tatarka.injectedvmprovider.InjectedViewModelProvider;
+
+                class MyActivity {
+                    void onCreate(InjectedViewModelProvider provider, Provider<MyViewModel> vmProvider) {
+                        provider.get(vmProvider);
+                        provider.get(new Provider<MyViewModel>() {
+                            @Override
+                            public MyViewModel get() {
+                                return new MyViewModel();
+                            }
+                        });
+                        provider.get(() -> new MyViewModel());
+                        provider.get(MyViewModel.class, () -> new MyViewModel());
+                    }
+                }
+                """
+            ).indented()
+        ).issues(AnonymousProviderDetector.ISSUE)
+            .run()
+            .expectErrorCount(2)
+            .expectMatches("provider's class, which is local or anonymous")
+    }
+
+    fun `test anonymous provider fix passes the ViewModel class`() {
+        lint().files(
+            *STUBS,
+            kotlin(
+                "src/test/MyActivity.kt",
+                """
+                package test
+
+                import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+
+                fun onCreate(provider: InjectedViewModelProvider) {
+                    provider.get { MyViewModel() }
+                }
+                """
+            ).indented()
+        ).issues(AnonymousProviderDetector.ISSUE)
+            .run()
+            .expectErrorCount(1)
+            .expectFixDiffs(
+                """
+                Fix for src/test/MyActivity.kt line 6: Key by the ViewModel class:
+                @@ -6 +6
+                -     provider.get { MyViewModel() }
+                +     provider.get(MyViewModel::class.java) { MyViewModel() }
+                """
+            )
+    }
+
+    fun `test provider created in a loop or bind method is a warning`() {
+        lint().files(
+            *STUBS,
+            java(
+                """
+                package test;
+
+                import androidx.lifecycle.ViewModelStore;
+                import me.tatarka.injectedvmprovider.InjectedViewModelProvider;
+
+                class MyAdapter {
+                    private final InjectedViewModelProvider provider = new InjectedViewModelProvider(new ViewModelStore());
+
+                    void onBindViewHolder(ViewModelStore store) {
+                        new InjectedViewModelProvider(store);
+                    }
+
+                    void bindAll(ViewModelStore[] stores) {
+                        for (ViewModelStore store : stores) {
+                            new InjectedViewModelProvider(store);
+                        }
+                    }
+                }
+                """
+            ).indented()
+        ).issues(ProviderConstructionDetector.ISSUE)
+            .run()
+            .expectWarningCount(2)
+            .expectMatches("every time `onBindViewHolder` is called")
+            .expectMatches("on every iteration of a loop")
+    }
+
+    fun `test key built from an id is a warning`() {
+        lint().files(
+            *STUBS,
+            java(
+                """
+                package test;
+
+                import javax.inject.Provider;
+                import me.tatarka.injectedvmprovider.InjectedViewModelProvider;
+
+                class MyAdapter {
+                    static final String KEY = "key";
+
+                    void onBindViewHolder(InjectedViewModelProvider provider, Provider<MyViewModel> vmProvider, long id) {
+                        provider.get("item:" + id, vmProvider);
+                        provider.get(KEY, vmProvider);
+                        provider.get("item:" + 1, vmProvider);
+                    }
+                }
+                """
+            ).indented()
+        ).issues(DynamicKeyDetector.ISSUE)
+            .run()
+            .expectWarningCount(1)
+            .expectFixDiffs(
+                """
+                Fix for src/test/MyAdapter.java line 10: Use a ViewModelPool:
+                @@ -10 +10
+                -         provider.get("item:" + id, vmProvider);
+                +         provider.getPool("item:", 16).get(id, vmProvider);
+                """
+            )
+    }
+
+    companion object {
+        private val STUBS: Array<TestFile> = arrayOf(
+            java(
+                """
+                package javax.inject;
+
+                public interface Provider<T> {
+                    T get();
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package androidx.lifecycle;
+
+                public abstract class ViewModel {
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package androidx.lifecycle;
+
+                public class ViewModelStore {
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package me.tatarka.injectedvmprovider;
+
+                public interface FactoryCreator<F, T> {
+                    T create(F factory);
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package me.tatarka.injectedvmprovider;
+
+                public final class ViewModelPool {
+                    public <T extends androidx.lifecycle.ViewModel> T get(long id, javax.inject.Provider<T> provider) { return null; }
+                    public <T extends androidx.lifecycle.ViewModel> T get(String key, javax.inject.Provider<T> provider) { return null; }
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package me.tatarka.injectedvmprovider;
+
+                import androidx.lifecycle.ViewModel;
+                import androidx.lifecycle.ViewModelStore;
+                import javax.inject.Provider;
+
+                public class InjectedViewModelProvider {
+                    public InjectedViewModelProvider(ViewModelStore store) {}
+                    public <T extends ViewModel> T get(Provider<T> provider) { return null; }
+                    public <T extends ViewModel> T get(Class<T> viewModelClass, Provider<T> provider) { return null; }
+                    public <T extends ViewModel> T get(String key, Provider<T> provider) { return null; }
+                    public <F, T extends ViewModel> T get(F factory, FactoryCreator<F, T> creator) { return null; }
+                    public ViewModelPool getPool(String name, int maxSize) { return null; }
+                }
+                """
+            ).indented(),
+            java(
+                """
+                package test;
+
+                public class MyViewModel extends androidx.lifecycle.ViewModel {
+                }
+                """
+            ).indented()
+        )
+    }
+}
@@ -6,9 +6,13 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.savedstate.SavedStateRegistry;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Helper to access {@link SavedStateHandle} {@code createHandle} and {@code savedStateProvider}
- * methods which are package-private.
+ * methods and its values which are package-private.
  */
 public class SavedStateHandleBridge {
 
@@ -17,8 +21,79 @@ public class SavedStateHandleBridge {
         return SavedStateHandle.createHandle(restoredState, defaultState);
     }
 
+    /**
+     * Returns the number of values in state saved by a {@link SavedStateHandle}, or 0 if there is
+     * none.
+     */
+    public static int restoredStateSize(@Nullable Bundle restoredState) {
+        if (restoredState == null) {
+            return 0;
+        }
+        List<?> keys = restoredState.getParcelableArrayList("keys");
+        return keys != null ? keys.size() : 0;
+    }
+
     @NonNull
     public static SavedStateRegistry.SavedStateProvider savedStateProvider(@NonNull SavedStateHandle handle) {
         return handle.savedStateProvider();
     }
+
+    /**
+     * Returns a provider that saves the given handle the same as {@link #savedStateProvider}, but
+     * returns the state from the last save again if no value has been set or removed since. Values
+     * are compared by identity, so a mutable value that was changed in place is still saved
+     * correctly as the returned state refers to it rather than to a copy.
+     */
+    @NonNull
+    public static SavedStateRegistry.SavedStateProvider incrementalSavedStateProvider(@NonNull SavedStateHandle handle) {
+        return new IncrementalSavedStateProvider(handle);
+    }
+
+    private static final class IncrementalSavedStateProvider implements SavedStateRegistry.SavedStateProvider {
+        private final SavedStateHandle handle;
+        private final SavedStateRegistry.SavedStateProvider provider;
+        private final HashMap<String, Object> snapshot = new HashMap<>();
+        @Nullable
+        private Bundle lastState;
+
+        IncrementalSavedStateProvider(SavedStateHandle handle) {
+            this.handle = handle;
+            this.provider = handle.savedStateProvider();
+        }
+
+        @NonNull
+        @Override
+        public Bundle saveState() {
+            if (lastState != null && !changed()) {
+                return lastState;
+            }
+            Bundle state = provider.saveState();
+            snapshot.clear();
+            snapshot.putAll(handle.mRegular);
+            lastState = state;
+            return state;
+        }
+
+        /**
+         * Returns true if a value was set or removed since the last save. Values saved by a
+         * provider set with {@link SavedStateHandle#setSavedStateProvider} are new on every save,
+         * so they're always considered changed.
+         */
+        private boolean changed() {
+            if (!handle.mSavedStateProviders.isEmpty()) {
+                return true;
+            }
+            Map<String, Object> values = handle.mRegular;
+            if (values.size() != snapshot.size()) {
+                return true;
+            }
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                if (snapshot.get(entry.getKey()) != value || (value == null && !snapshot.containsKey(entry.getKey()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package androidx.lifecycle;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Helper to access the {@link ViewModel} {@code clear}, {@code getTag} and {@code setTagIfAbsent}
+ * methods which are package-private.
+ */
+public class ViewModelBridge {
+
+    /**
+     * Clears the given {@link ViewModel}, closing any of its tags and calling
+     * {@link ViewModel#onCleared()}, the same as if its {@link ViewModelStore} was cleared.
+     */
+    @MainThread
+    public static void clear(@NonNull ViewModel viewModel) {
+        viewModel.clear();
+    }
+
+    /**
+     * Sets a tag on the given {@link ViewModel} if it doesn't have one for the key yet. A tag that
+     * is {@link java.io.Closeable} is closed when the ViewModel is cleared.
+     *
+     * @return The tag the ViewModel has for the key.
+     */
+    @NonNull
+    public static <T> T setTagIfAbsent(@NonNull ViewModel viewModel, @NonNull String key, @NonNull T value) {
+        return viewModel.setTagIfAbsent(key, value);
+    }
+
+    /**
+     * Returns the tag the given {@link ViewModel} has for the key, or null if it doesn't have one.
+     */
+    @Nullable
+    public static <T> T getTag(@NonNull ViewModel viewModel, @NonNull String key) {
+        return viewModel.getTag(key);
+    }
+}
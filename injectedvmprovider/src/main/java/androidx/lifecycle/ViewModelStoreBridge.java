@@ -3,9 +3,11 @@ package androidx.lifecycle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.Set;
+
 /**
- * Helper to access {@link ViewModelStore} {@code get} and {@code put} methods which are
- * package-private.
+ * Helper to access {@link ViewModelStore} {@code get}, {@code put} and {@code keys} methods which
+ * are package-private.
  */
 public class ViewModelStoreBridge {
 
@@ -17,4 +19,9 @@ public class ViewModelStoreBridge {
     public static ViewModel get(@NonNull ViewModelStore store, @NonNull String key) {
         return store.get(key);
     }
+
+    @NonNull
+    public static Set<String> keys(@NonNull ViewModelStore store) {
+        return store.keys();
+    }
 }
@@ -0,0 +1,139 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+import javax.inject.Provider;
+
+/**
+ * A version of {@link InjectedViewModelProvider} whose {@code get} methods may be called from any
+ * thread, for example from background work that needs a ViewModel of a screen. A ViewModel is only
+ * ever created once per key; if several threads ask for one that doesn't exist yet, one creates it
+ * on its thread and the others wait for it. Getting an existing ViewModel doesn't block.
+ * <p>
+ * As a {@link ViewModelStore} may only be accessed from the main thread, ViewModels created on other
+ * threads are kept in a holder in the store until an {@link InjectedViewModelProvider} for the same
+ * store looks them up on the main thread, which puts them in the store. Either way both providers
+ * resolve the same ViewModel for a key, and it's cleared along with the store. The providers and
+ * factories passed in must be safe to call from any thread.
+ * <p>
+ * Methods that provide a {@link SavedStateHandle} are not available, as the
+ * {@link androidx.savedstate.SavedStateRegistry} may only be accessed from the main thread.
+ */
+public class ConcurrentInjectedViewModelProvider {
+
+    @NonNull
+    private final ConcurrentViewModels viewModels;
+
+    /**
+     * Creates a {@code ConcurrentInjectedViewModelProvider}, which will create {@code ViewModels}
+     * and retain them in a store of the given {@code ViewModelStoreOwner}.
+     *
+     * @param owner a {@code ViewModelStoreOwner} whose {@link ViewModelStore} will be used to
+     *              retain {@code ViewModels}
+     */
+    @MainThread
+    public ConcurrentInjectedViewModelProvider(@NonNull ViewModelStoreOwner owner) {
+        this(owner.getViewModelStore());
+    }
+
+    /**
+     * Creates a {@code ConcurrentInjectedViewModelProvider}, which will create {@code ViewModels}
+     * and retain them in the given {@code store}.
+     *
+     * @param store {@code ViewModelStore} where ViewModels will be stored.
+     */
+    @MainThread
+    public ConcurrentInjectedViewModelProvider(@NonNull ViewModelStore store) {
+        this.viewModels = ConcurrentViewModels.get(store);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one, see
+     * {@link InjectedViewModelProvider#get(Provider)}.
+     *
+     * @throws IllegalArgumentException If the given provider is a local or anonymous class.
+     * @throws IllegalStateException    If the store was cleared while the ViewModel was created.
+     */
+    @NonNull
+    @AnyThread
+    public <T extends ViewModel> T get(@NonNull Provider<T> provider) {
+        return get(InjectedViewModelProvider.defaultKey(provider.getClass()), provider);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one, see
+     * {@link InjectedViewModelProvider#get(Class, Provider)}.
+     *
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     * @throws IllegalStateException    If the store was cleared while the ViewModel was created.
+     */
+    @NonNull
+    @AnyThread
+    public <T extends ViewModel> T get(@NonNull Class<T> viewModelClass, @NonNull Provider<T> provider) {
+        return get(InjectedViewModelProvider.defaultKey(viewModelClass), provider);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one, see
+     * {@link InjectedViewModelProvider#get(String, Provider)}.
+     *
+     * @throws IllegalStateException If the store was cleared while the ViewModel was created.
+     */
+    @NonNull
+    @AnyThread
+    public <T extends ViewModel> T get(@NonNull String key, @NonNull final Provider<T> provider) {
+        ViewModel viewModel = viewModels.peek(key);
+        if (viewModel == null) {
+            viewModel = viewModels.get(key, new ViewModelCreation(ViewModelCreation.PROVIDER) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            });
+        }
+        //noinspection unchecked
+        return (T) viewModel;
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one, see
+     * {@link InjectedViewModelProvider#get(Object, FactoryCreator)}.
+     *
+     * @throws IllegalArgumentException If the given factory is a local or anonymous class.
+     * @throws IllegalStateException    If the store was cleared while the ViewModel was created.
+     */
+    @NonNull
+    @AnyThread
+    public <F, T extends ViewModel> T get(@NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
+        return get(InjectedViewModelProvider.defaultKey(factory.getClass()), factory, creator);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one, see
+     * {@link InjectedViewModelProvider#get(String, Object, FactoryCreator)}.
+     *
+     * @throws IllegalStateException If the store was cleared while the ViewModel was created.
+     */
+    @NonNull
+    @AnyThread
+    public <F, T extends ViewModel> T get(@NonNull String key, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        ViewModel viewModel = viewModels.peek(key);
+        if (viewModel == null) {
+            viewModel = viewModels.get(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            });
+        }
+        //noinspection unchecked
+        return (T) viewModel;
+    }
+}
@@ -0,0 +1,316 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Indexes the ViewModels of a {@link ViewModelStore} for
+ * {@link ConcurrentInjectedViewModelProvider ConcurrentInjectedViewModelProviders}, since the store
+ * may only be accessed from the main thread. Once this exists, every ViewModel put in the store is
+ * also published here, and a ViewModel created on another thread is put in the store the next time
+ * it's looked up on the main thread, so both resolve the same instance for a key. This is itself
+ * kept in the store so that ViewModels created on other threads are cleared along with it even if
+ * they never made it into the store.
+ */
+final class ConcurrentViewModels extends ViewModel {
+
+    static final String KEY = "me.tatarka.injectedvmprovider.ConcurrentViewModels";
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final ConcurrentHashMap<String, FutureTask<ViewModel>> viewModels = new ConcurrentHashMap<>();
+    /**
+     * ViewModels created on other threads that haven't been put in the store yet.
+     */
+    private final List<ViewModel> created = new ArrayList<>();
+    private boolean cleared;
+
+    /**
+     * Returns the concurrent ViewModels for the given store, or null if no
+     * {@link ConcurrentInjectedViewModelProvider} has been created for it.
+     */
+    @Nullable
+    @MainThread
+    static ConcurrentViewModels peek(@NonNull ViewModelStore store) {
+        return (ConcurrentViewModels) ViewModelStoreBridge.get(store, KEY);
+    }
+
+    @NonNull
+    @MainThread
+    static ConcurrentViewModels get(@NonNull ViewModelStore store) {
+        ConcurrentViewModels concurrentViewModels = peek(store);
+        if (concurrentViewModels == null) {
+            concurrentViewModels = new ConcurrentViewModels();
+            // The ViewModels already in the store won't be published otherwise.
+            for (String key : ViewModelStoreBridge.keys(store)) {
+                ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+                if (viewModel != null && !(viewModel instanceof SoftViewModel)) {
+                    concurrentViewModels.viewModels.put(key, done(viewModel));
+                }
+            }
+            ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+            if (expiry != null) {
+                for (Map.Entry<String, ViewModel> entry : expiry.getViewModels().entrySet()) {
+                    concurrentViewModels.viewModels.put(entry.getKey(), done(entry.getValue()));
+                }
+            }
+            ViewModelStoreBridge.put(store, KEY, concurrentViewModels);
+        }
+        return concurrentViewModels;
+    }
+
+    /**
+     * Returns the ViewModel for the given key if it has been created, without blocking or
+     * allocating.
+     */
+    @Nullable
+    ViewModel peek(@NonNull String key) {
+        FutureTask<ViewModel> task = viewModels.get(key);
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        try {
+            return getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the ViewModel for the given key, creating it on the calling thread if no other thread
+     * is. If another thread is creating it, this blocks until it's done.
+     */
+    @NonNull
+    ViewModel get(@NonNull String key, @NonNull ViewModelCreation creation) {
+        FutureTask<ViewModel> task = viewModels.get(key);
+        if (task == null) {
+            FutureTask<ViewModel> newTask = new FutureTask<>(new Creator(key, creation));
+            task = viewModels.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                newTask.run();
+            }
+        }
+        try {
+            return getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            // Let the next caller try again.
+            viewModels.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Returns true if there is a ViewModel for the given key, or one is being created.
+     */
+    @MainThread
+    boolean contains(@NonNull String key) {
+        return viewModels.containsKey(key);
+    }
+
+    /**
+     * Reserves the given key for a ViewModel the main thread is about to create, so that other
+     * threads wait for it instead of creating their own.
+     *
+     * @return The claim to complete once the ViewModel is created, or null if another thread is
+     * already creating one. In that case it should be taken with {@link #take(String)}.
+     */
+    @Nullable
+    @MainThread
+    Claim claim(@NonNull String key) {
+        Claim claim = new Claim(key);
+        return viewModels.putIfAbsent(key, claim) == null ? claim : null;
+    }
+
+    /**
+     * Returns the ViewModel for the given key, waiting for it if another thread is still creating
+     * it. If it was created on another thread the caller takes it over and must put it in the store.
+     *
+     * @return The ViewModel, or null if there isn't one or creating it failed.
+     */
+    @Nullable
+    @MainThread
+    ViewModel take(@NonNull String key) {
+        FutureTask<ViewModel> task = viewModels.get(key);
+        if (task == null) {
+            return null;
+        }
+        ViewModel viewModel;
+        try {
+            viewModel = getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            viewModels.remove(key, task);
+            return null;
+        }
+        synchronized (this) {
+            created.remove(viewModel);
+        }
+        return viewModel;
+    }
+
+    /**
+     * Publishes a ViewModel that was put in the store outside of a {@link Claim}.
+     *
+     * @return The ViewModel to use for the key, which is one created on another thread in the
+     * meantime if there is one.
+     */
+    @NonNull
+    @MainThread
+    ViewModel publish(@NonNull String key, @NonNull ViewModel viewModel) {
+        if (viewModels.putIfAbsent(key, done(viewModel)) == null) {
+            return viewModel;
+        }
+        ViewModel existing = take(key);
+        return existing != null ? existing : viewModel;
+    }
+
+    /**
+     * Returns the ViewModels created on other threads that haven't been put in the store yet, by
+     * their key.
+     */
+    @NonNull
+    @MainThread
+    Map<String, ViewModel> getUnclaimedViewModels() {
+        HashMap<String, ViewModel> unclaimed = new HashMap<>();
+        synchronized (this) {
+            if (created.isEmpty()) {
+                return unclaimed;
+            }
+            for (Map.Entry<String, FutureTask<ViewModel>> entry : viewModels.entrySet()) {
+                ViewModel viewModel = peek(entry.getKey());
+                if (viewModel != null && created.contains(viewModel)) {
+                    unclaimed.put(entry.getKey(), viewModel);
+                }
+            }
+        }
+        return unclaimed;
+    }
+
+    /**
+     * Forgets the given ViewModel for the given key once it has been cleared.
+     */
+    @MainThread
+    void remove(@NonNull String key, @NonNull ViewModel viewModel) {
+        if (peek(key) == viewModel) {
+            viewModels.remove(key);
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        List<ViewModel> created;
+        synchronized (this) {
+            cleared = true;
+            created = new ArrayList<>(this.created);
+            this.created.clear();
+        }
+        for (ViewModel viewModel : created) {
+            ViewModelBridge.clear(viewModel);
+        }
+    }
+
+    private static FutureTask<ViewModel> done(ViewModel viewModel) {
+        FutureTask<ViewModel> task = new FutureTask<>(NOTHING, viewModel);
+        task.run();
+        return task;
+    }
+
+    private static ViewModel getUninterruptibly(FutureTask<ViewModel> task) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A key reserved for a ViewModel that's being created on the main thread.
+     */
+    final class Claim extends FutureTask<ViewModel> {
+        private final String key;
+
+        Claim(String key) {
+            super(NOTHING, null);
+            this.key = key;
+        }
+
+        @MainThread
+        void complete(@NonNull ViewModel viewModel) {
+            set(viewModel);
+        }
+
+        /**
+         * Releases the key so the next caller tries again. Threads waiting for it get the error.
+         */
+        @MainThread
+        void fail(@NonNull Throwable error) {
+            viewModels.remove(key, this);
+            setException(error);
+        }
+    }
+
+    private final class Creator implements Callable<ViewModel> {
+        private final String key;
+        private final ViewModelCreation creation;
+
+        Creator(String key, ViewModelCreation creation) {
+            this.key = key;
+            this.creation = creation;
+        }
+
+        @Override
+        public ViewModel call() {
+            ViewModel viewModel = InjectedViewModelProvider.createUnstored(key, creation);
+            //noinspection ConstantConditions
+            if (viewModel == null) {
+                throw new NullPointerException("ViewModel was created as null");
+            }
+            boolean cleared;
+            synchronized (ConcurrentViewModels.this) {
+                cleared = ConcurrentViewModels.this.cleared;
+                if (!cleared) {
+                    created.add(viewModel);
+                }
+            }
+            if (cleared) {
+                ViewModelBridge.clear(viewModel);
+                throw new IllegalStateException("ViewModelStore was cleared while the ViewModel was being created");
+            }
+            return viewModel;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package me.tatarka.injectedvmprovider;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code ViewModel} to have a typed accessor generated for it by
+ * {@code injectedvmprovider-compiler}. For a ViewModel {@code MyViewModel} a
+ * {@code MyViewModel_Injected} class is generated with the precomputed key and static {@code get}
+ * methods, so no reflection or string building happens when obtaining the ViewModel.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * @InjectedViewModel
+ * public class MyViewModel extends ViewModel {
+ *     ...
+ * }
+ *
+ * MyViewModel vm = MyViewModel_Injected.get(new InjectedViewModelProvider(this), vmProvider);
+ * }</pre>
+ * <p>
+ * The generated key is the same one used by {@link InjectedViewModelProvider#get(Class, javax.inject.Provider)}
+ * so the generated accessors may be mixed with the regular {@code get} methods.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface InjectedViewModel {
+}
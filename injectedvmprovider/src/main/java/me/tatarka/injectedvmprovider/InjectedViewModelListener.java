@@ -0,0 +1,38 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+
+/**
+ * Receives events about ViewModels obtained through an {@link InjectedViewModelProvider}, for
+ * example to report creation times and cache hit rates. Set one for all providers with
+ * {@link InjectedViewModelProvider#setGlobalListener(InjectedViewModelListener)} or for a single
+ * provider with {@link InjectedViewModelProvider#setListener(InjectedViewModelListener)}.
+ * <p>
+ * When no listener is set, nothing is measured.
+ */
+public interface InjectedViewModelListener {
+
+    /**
+     * Called on the main thread when a ViewModel was already in the store.
+     *
+     * @param key       The key of the ViewModel.
+     * @param viewModel The ViewModel.
+     */
+    void onViewModelHit(@NonNull String key, @NonNull ViewModel viewModel);
+
+    /**
+     * Called when a ViewModel was created. This is called on the thread that created it, which is
+     * not the main thread for ViewModels obtained with {@code getAsync} or
+     * {@link InjectedViewModelProvider#prewarm()}.
+     *
+     * @param key               The key of the ViewModel.
+     * @param viewModel         The ViewModel.
+     * @param durationNanos     How long the {@code Provider} or factory took to create it.
+     * @param restoredStateSize The number of values restored into its {@code SavedStateHandle}, or
+     *                          -1 if it wasn't created with one or was created with a
+     *                          {@link LazySavedStateHandle}.
+     * @param thread            The thread it was created on.
+     */
+    void onViewModelCreated(@NonNull String key, @NonNull ViewModel viewModel, long durationNanos, int restoredStateSize, @NonNull Thread thread);
+}
@@ -8,12 +8,20 @@ import androidx.annotation.Nullable;
 import androidx.lifecycle.SavedStateHandle;
 import androidx.lifecycle.SavedStateHandleBridge;
 import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
 import androidx.lifecycle.ViewModelStore;
 import androidx.lifecycle.ViewModelStoreBridge;
 import androidx.lifecycle.ViewModelStoreOwner;
 import androidx.savedstate.SavedStateRegistry;
 import androidx.savedstate.SavedStateRegistryOwner;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Provider;
 
 /**
@@ -41,6 +49,15 @@ public class InjectedViewModelProvider {
     private static final String DEFAULT_KEY =
             "androidx.lifecycle.ViewModelProvider.DefaultKey";
 
+    private static final String POOL_KEY = "me.tatarka.injectedvmprovider.ViewModelPool";
+
+    /**
+     * Keys derived from a class, so that only the first lookup for a given class pays for
+     * {@link Class#getCanonicalName()} and the string concatenation.
+     */
+    private static final ConcurrentHashMap<Class<?>, String> DEFAULT_KEYS =
+            new ConcurrentHashMap<>();
+
     /**
      * Creates an {@link InjectedViewModelProvider}, which retains ViewModels while a scope of given
      * {@code owner} is alive. More detailed explanation is in {@link androidx.lifecycle.ViewModel}.
@@ -58,12 +75,44 @@ public class InjectedViewModelProvider {
         return new InjectedViewModelProvider(owner.getViewModelStore());
     }
 
+    @Nullable
+    private static volatile InjectedViewModelListener globalListener;
+
+    /**
+     * Sets a listener that is notified about ViewModels obtained through every
+     * {@code InjectedViewModelProvider} that doesn't have its own listener set with
+     * {@link #setListener(InjectedViewModelListener)}, and about the ViewModels created by a
+     * {@link ConcurrentInjectedViewModelProvider} or a {@link ViewModelPool}. Pass null to remove it.
+     */
+    public static void setGlobalListener(@Nullable InjectedViewModelListener listener) {
+        globalListener = listener;
+    }
+
+    /**
+     * Sets a tracer that receives sections around the work done to create ViewModels, for all
+     * providers. Pass null to turn tracing off, which is the default.
+     *
+     * @see SystemViewModelTracer
+     * @see RecordingViewModelTracer
+     */
+    public static void setTracer(@Nullable ViewModelTracer tracer) {
+        ViewModelTracing.tracer = tracer;
+    }
+
     @NonNull
-    private final ViewModelStore store;
+    final ViewModelStore store;
     @Nullable
     private final SavedStateRegistry registry;
     @Nullable
     private final Bundle defaultArgs;
+    @Nullable
+    private InjectedViewModelListener listener;
+    @Nullable
+    private SavedStateSpill spill;
+    @Nullable
+    private final InjectedViewModelProvider parent;
+    @Nullable
+    private final InjectedViewModelProvider child;
 
     /**
      * Creates {@code ViewModelProvider}, which will create {@code ViewModels} and retain them in a
@@ -101,6 +150,8 @@ public class InjectedViewModelProvider {
         this.store = store;
         this.registry = null;
         this.defaultArgs = null;
+        this.parent = null;
+        this.child = null;
     }
 
     /**
@@ -117,6 +168,166 @@ public class InjectedViewModelProvider {
         this.store = store;
         this.registry = registry;
         this.defaultArgs = defaultArgs;
+        this.parent = null;
+        this.child = null;
+    }
+
+    private InjectedViewModelProvider(@NonNull InjectedViewModelProvider source, @Nullable Bundle defaultArgs, @Nullable InjectedViewModelProvider parent, @Nullable InjectedViewModelProvider child) {
+        this.store = source.store;
+        this.registry = source.registry;
+        this.defaultArgs = defaultArgs;
+        this.listener = source.listener;
+        this.spill = source.spill;
+        this.parent = parent;
+        this.child = child;
+    }
+
+    /**
+     * Returns a provider for the same scope as this one that, when a ViewModel isn't in this scope,
+     * looks for it in the given parent scope before creating it. This allows several scopes, for
+     * example the fragments on a screen, to share a ViewModel that one of their parents, for example
+     * the activity, already has. Parents are searched in order, so the parent may itself have a
+     * parent.
+     * <p>
+     * A ViewModel that isn't found anywhere is created in this scope. To create it in a parent scope
+     * instead, get it from that scope's provider.
+     *
+     * @param parent The provider of the parent scope.
+     * @return A new provider that searches the parent.
+     */
+    @NonNull
+    @MainThread
+    public InjectedViewModelProvider withParent(@NonNull InjectedViewModelProvider parent) {
+        return new InjectedViewModelProvider(this, defaultArgs, parent, child);
+    }
+
+    /**
+     * Returns a provider for the same scope as this one that looks for ViewModels in the given child
+     * scope before this one, but still creates them in this scope. This allows a scope, for example
+     * a fragment, to create a ViewModel in one of its parents, for example the activity, while still
+     * seeing the ViewModels it has itself. Children are searched in order, so the child may itself
+     * have a child. The parents of the child aren't searched.
+     *
+     * @param child The provider of the child scope.
+     * @return A new provider that searches the child first.
+     */
+    @NonNull
+    @MainThread
+    public InjectedViewModelProvider withChild(@NonNull InjectedViewModelProvider child) {
+        return new InjectedViewModelProvider(this, defaultArgs, parent, child);
+    }
+
+    /**
+     * Returns a provider for the same scope as this one that creates each {@link SavedStateHandle}
+     * with the given default arguments instead. Its listener, spill, parent and child are the ones this
+     * provider has at the time.
+     *
+     * @param defaultArgs the default arguments to pass when creating a {@link SavedStateHandle}
+     * @return A new provider that uses the default arguments.
+     */
+    @NonNull
+    @MainThread
+    public InjectedViewModelProvider withDefaultArgs(@Nullable Bundle defaultArgs) {
+        return new InjectedViewModelProvider(this, defaultArgs, parent, child);
+    }
+
+    /**
+     * Sets a listener that is notified about ViewModels obtained through this provider, in place of
+     * the one set with {@link #setGlobalListener(InjectedViewModelListener)}. Pass null to go back
+     * to the global listener.
+     */
+    @MainThread
+    public void setListener(@Nullable InjectedViewModelListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets where to move large values of the {@link SavedStateHandle SavedStateHandles} this provider
+     * creates, to keep them out of the saved instance state. This only applies to handles created
+     * after it's set, so it should be set before calling any {@code get} methods. Pass null to keep
+     * all values in the saved instance state, which is the default.
+     *
+     * @see SavedStateSpill
+     */
+    @MainThread
+    public void setSavedStateSpill(@Nullable SavedStateSpill spill) {
+        this.spill = spill;
+    }
+
+    /**
+     * Clears the ViewModel with the given key once it hasn't been obtained with {@code get} for the
+     * given time, so that it doesn't stay in a long-lived scope forever. A later {@code get} creates
+     * it again. This applies to every provider of the same {@link ViewModelStore} and only to
+     * ViewModels created after it's set, so it should be set before calling any {@code get}
+     * methods. ViewModels created with {@code getAsync} or {@link #prewarm()} don't expire.
+     * <p>
+     * Expired ViewModels are cleared when the main thread is idle, and their
+     * {@link SavedStateHandle} is no longer saved.
+     * <p>
+     * Only {@code get} marks a ViewModel as used, holding on to it doesn't. The ktx
+     * {@code viewModels} delegates and the compose {@code injectedViewModel} call {@code get} once
+     * and keep the result, so a ViewModel obtained through them expires while it's still on screen.
+     * Only set an expiry for ViewModels that are obtained with {@code get} every time they're used.
+     *
+     * @param key The key of the ViewModel.
+     * @param ttl How long the ViewModel is kept after it was last obtained.
+     * @throws IllegalArgumentException If ttl is negative.
+     */
+    @MainThread
+    public void setExpiry(@NonNull String key, long ttl, @NonNull TimeUnit unit) {
+        ViewModelExpiry.get(store).setTtl(key, ttlMillis(ttl, unit));
+    }
+
+    /**
+     * Clears ViewModels of the given class once they haven't been obtained with {@code get} for the
+     * given time, whatever key they have. An expiry set for a key with
+     * {@link #setExpiry(String, long, TimeUnit)} takes precedence.
+     * <p>
+     * Only {@code get} marks a ViewModel as used, so like with
+     * {@link #setExpiry(String, long, TimeUnit)}, ViewModels held by the ktx {@code viewModels}
+     * delegates or remembered by the compose {@code injectedViewModel} expire while still on screen.
+     *
+     * @param viewModelClass The exact class of the ViewModels.
+     * @param ttl            How long a ViewModel is kept after it was last obtained.
+     * @throws IllegalArgumentException If ttl is negative.
+     * @see #setExpiry(String, long, TimeUnit)
+     */
+    @MainThread
+    public void setExpiry(@NonNull Class<? extends ViewModel> viewModelClass, long ttl, @NonNull TimeUnit unit) {
+        ViewModelExpiry.get(store).setTtl(viewModelClass, ttlMillis(ttl, unit));
+    }
+
+    /**
+     * Returns the number of ViewModels in this provider's {@link ViewModelStore} that have been
+     * cleared because they expired.
+     *
+     * @see #setExpiry(String, long, TimeUnit)
+     */
+    @MainThread
+    public int getExpiredCount() {
+        ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+        return expiry != null ? expiry.getExpiredCount() : 0;
+    }
+
+    /**
+     * Returns the number of ViewModels in this provider's {@link ViewModelStore} that have been
+     * cleared because they expired, by their class, to find out which expiries actually reclaim
+     * anything.
+     *
+     * @see #setExpiry(String, long, TimeUnit)
+     */
+    @NonNull
+    @MainThread
+    public Map<Class<? extends ViewModel>, Integer> getExpiredCounts() {
+        ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+        return expiry != null ? expiry.getExpiredCounts() : Collections.<Class<? extends ViewModel>, Integer>emptyMap();
+    }
+
+    private static long ttlMillis(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        return unit.toMillis(ttl);
     }
 
     /**
@@ -138,11 +349,7 @@ public class InjectedViewModelProvider {
     @NonNull
     @MainThread
     public <T extends ViewModel> T get(@NonNull Provider<T> provider) {
-        String canonicalName = provider.getClass().getCanonicalName();
-        if (canonicalName == null) {
-            throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
-        }
-        return get(DEFAULT_KEY + ":" + canonicalName, provider);
+        return get(defaultKey(provider.getClass()), provider);
     }
 
     /**
@@ -152,6 +359,9 @@ public class InjectedViewModelProvider {
      * The created ViewModel is associated with the given scope and will be retained
      * as long as the scope is alive (e.g. if it is an activity, until it is
      * finished or process is killed).
+     * <p>
+     * If the ViewModel is a {@link ResettableViewModel} a cleared instance from
+     * {@link ViewModelRecycler} is reused if there is one.
      *
      * @param viewModelClass The view model class, used as a unique key.
      * @param provider       The provider of the ViewModel to create an instance of it if it is not
@@ -162,12 +372,19 @@ public class InjectedViewModelProvider {
      */
     @NonNull
     @MainThread
-    public <T extends ViewModel> T get(@NonNull Class<T> viewModelClass, Provider<T> provider) {
-        String canonicalName = viewModelClass.getCanonicalName();
-        if (canonicalName == null) {
-            throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
+    public <T extends ViewModel> T get(@NonNull Class<T> viewModelClass, @NonNull final Provider<T> provider) {
+        String key = defaultKey(viewModelClass);
+        ViewModel viewModel = lookup(key);
+        if (viewModel == null) {
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.PROVIDER, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            });
         }
-        return get(DEFAULT_KEY + ":" + canonicalName, provider);
+        //noinspection unchecked
+        return (T) viewModel;
     }
 
     /**
@@ -186,11 +403,15 @@ public class InjectedViewModelProvider {
      */
     @NonNull
     @MainThread
-    public <T extends ViewModel> T get(@NonNull String key, @NonNull Provider<T> provider) {
-        ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+    public <T extends ViewModel> T get(@NonNull String key, @NonNull final Provider<T> provider) {
+        ViewModel viewModel = lookup(key);
         if (viewModel == null) {
-            viewModel = provider.get();
-            ViewModelStoreBridge.put(store, key, viewModel);
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.PROVIDER) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            });
         }
         //noinspection unchecked
         return (T) viewModel;
@@ -214,11 +435,44 @@ public class InjectedViewModelProvider {
     @NonNull
     @MainThread
     public <F, T extends ViewModel> T get(@NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
-        String canonicalName = factory.getClass().getCanonicalName();
-        if (canonicalName == null) {
-            throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
+        return get(defaultKey(factory.getClass()), factory, creator);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}.
+     * <p>
+     * The created ViewModel is associated with the given scope and will be retained
+     * as long as the scope is alive (e.g. if it is an activity, until it is
+     * finished or process is killed).
+     * <p>
+     * If the ViewModel is a {@link ResettableViewModel} a cleared instance from
+     * {@link ViewModelRecycler} is reused if there is one.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param factory        The factory of the ViewModel.
+     * @param creator        The factory creator of the ViewModel to create an instance of it if it
+     *                       is not present.
+     * @param <F>            The type parameter for the factory.
+     * @param <T>            The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(@NonNull Class<T> viewModelClass, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        String key = defaultKey(viewModelClass);
+        ViewModel viewModel = lookup(key);
+        if (viewModel == null) {
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            });
         }
-        return get(DEFAULT_KEY + ":" + canonicalName, factory, creator);
+        //noinspection unchecked
+        return (T) viewModel;
     }
 
     /**
@@ -239,11 +493,15 @@ public class InjectedViewModelProvider {
      */
     @NonNull
     @MainThread
-    public <F, T extends ViewModel> T get(@NonNull String key, @NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
-        ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+    public <F, T extends ViewModel> T get(@NonNull String key, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        ViewModel viewModel = lookup(key);
         if (viewModel == null) {
-            viewModel = creator.create(factory);
-            ViewModelStoreBridge.put(store, key, viewModel);
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            });
         }
         //noinspection unchecked
         return (T) viewModel;
@@ -268,11 +526,7 @@ public class InjectedViewModelProvider {
     @NonNull
     @MainThread
     public <T extends ViewModel> T get(@NonNull Class<T> viewModelClass, SavedStateFactory<T> factory) {
-        String canonicalName = viewModelClass.getCanonicalName();
-        if (canonicalName == null) {
-            throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
-        }
-        return get(DEFAULT_KEY + ":" + canonicalName, factory);
+        return get(defaultKey(viewModelClass), factory);
     }
 
     /**
@@ -294,11 +548,7 @@ public class InjectedViewModelProvider {
     @NonNull
     @MainThread
     public <F, T extends ViewModel> T get(@NonNull F factory, @NonNull SavedStateFactoryCreator<F, T> creator) {
-        String canonicalName = factory.getClass().getCanonicalName();
-        if (canonicalName == null) {
-            throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
-        }
-        return get(DEFAULT_KEY + ":" + canonicalName, factory, creator);
+        return get(defaultKey(factory.getClass()), factory, creator);
     }
 
     /**
@@ -321,12 +571,17 @@ public class InjectedViewModelProvider {
     @NonNull
     @MainThread
     public <F, T extends ViewModel> T get(@NonNull String key, @NonNull final F factory, @NonNull final SavedStateFactoryCreator<F, T> creator) {
-        return get(key, new SavedStateFactory<T>() {
-            @Override
-            public T create(SavedStateHandle handle) {
-                return creator.create(factory, handle);
-            }
-        });
+        ViewModel viewModel = lookup(key);
+        if (viewModel == null) {
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY_CREATOR) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory, handle);
+                }
+            });
+        }
+        //noinspection unchecked
+        return (T) viewModel;
     }
 
     /**
@@ -346,20 +601,1075 @@ public class InjectedViewModelProvider {
      */
     @NonNull
     @MainThread
-    public <T extends ViewModel> T get(@NonNull String key, @NonNull SavedStateFactory<T> factory) {
-        ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+    public <T extends ViewModel> T get(@NonNull String key, @NonNull final SavedStateFactory<T> factory) {
+        ViewModel viewModel = lookup(key);
         if (viewModel == null) {
-            if (registry == null) {
-                throw new IllegalArgumentException("must provide a SavedStateRegistry to obtain a SavedStateHandle");
-            }
-            Bundle restoredState = registry.consumeRestoredStateForKey(key);
-            SavedStateHandle handle = SavedStateHandleBridge.createHandle(restoredState, defaultArgs);
-            registry.registerSavedStateProvider(key, SavedStateHandleBridge.savedStateProvider(handle));
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return factory.create(handle);
+                }
+            });
+        }
+        //noinspection unchecked
+        return (T) viewModel;
+    }
 
-            viewModel = factory.create(handle);
-            ViewModelStoreBridge.put(store, key, viewModel);
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. Unlike
+     * {@link #get(Class, SavedStateFactory)} the ViewModel is given a {@link LazySavedStateHandle},
+     * which doesn't restore or save any state until it's used.
+     * <p>
+     * The created ViewModel is associated with the given scope and will be retained
+     * as long as the scope is alive (e.g. if it is an activity, until it is
+     * finished or process is killed).
+     *
+     * @param viewModelClass The class of the ViewModel to create an instance of it if it is not
+     *                       present.
+     * @param factory        The factory to create an instance of the ViewModel of it is not already
+     *                       present.
+     * @param <T>            The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the
+     *                                  constructor or the given viewModelClass is a local or
+     *                                  anonymous class. In the latter case, you must use
+     *                                  {@link #getWithLazyHandle(String, LazySavedStateFactory)}
+     *                                  instead so a unique key can be derived.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getWithLazyHandle(@NonNull Class<T> viewModelClass, @NonNull LazySavedStateFactory<T> factory) {
+        return getWithLazyHandle(defaultKey(viewModelClass), factory);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. Unlike
+     * {@link #get(String, SavedStateFactory)} the ViewModel is given a {@link LazySavedStateHandle},
+     * which doesn't restore or save any state until it's used.
+     * <p>
+     * The created ViewModel is associated with the given scope and will be retained
+     * as long as the scope is alive (e.g. if it is an activity, until it is
+     * finished or process is killed).
+     *
+     * @param key     The key to use to identify the ViewModel.
+     * @param factory The factory to create an instance of the ViewModel of it is not already
+     *                present.
+     * @param <T>     The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getWithLazyHandle(@NonNull final String key, @NonNull final LazySavedStateFactory<T> factory) {
+        ViewModel viewModel = lookup(key);
+        if (viewModel == null) {
+            final SavedStateRegistry registry = requireRegistry();
+            final SavedStateSpill spill = this.spill;
+            viewModel = create(key, new ViewModelCreation(ViewModelCreation.LAZY_SAVED_STATE_FACTORY) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    LazySavedStateHandle lazyHandle = new LazySavedStateHandle(store, spill, defaultArgs, key, registry);
+                    ViewModel viewModel = factory.create(lazyHandle);
+                    ViewModelBridge.setTagIfAbsent(viewModel, LazySavedStateHandle.TAG_KEY, lazyHandle);
+                    return viewModel;
+                }
+            });
+        } else {
+            LazySavedStateHandle lazyHandle = ViewModelBridge.getTag(viewModel, LazySavedStateHandle.TAG_KEY);
+            if (lazyHandle != null && registry != null) {
+                lazyHandle.bind(registry);
+            }
         }
         //noinspection unchecked
         return (T) viewModel;
     }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. Unlike
+     * {@link #get(Class, Provider)} the store only holds a small placeholder and the ViewModel
+     * itself is only softly reachable, so the garbage collector may reclaim it when memory is low.
+     * If it has been, it's created again with the given provider.
+     * <p>
+     * Use this for ViewModels that are caches that can cheaply be built again. As a reclaimed
+     * ViewModel isn't cleared, it must not rely on {@link ViewModel#onCleared()} or
+     * {@code viewModelScope}. The same key must always be obtained with a {@code getSoft} method.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param provider       The provider of the ViewModel to create an instance of it if it is not
+     *                       present.
+     * @param <T>            The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class. In
+     *                                  this case, you must use {@link #getSoft(String, Provider)}
+     *                                  instead so a unique key can be derived.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getSoft(@NonNull Class<T> viewModelClass, @NonNull Provider<T> provider) {
+        return getSoft(defaultKey(viewModelClass), provider);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope, only holding it softly. See
+     * {@link #getSoft(Class, Provider)}.
+     *
+     * @param key      The key to use to identify the ViewModel.
+     * @param provider The provider of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param <T>      The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getSoft(@NonNull String key, @NonNull final Provider<T> provider) {
+        //noinspection unchecked
+        return (T) getSoft(key, new ViewModelCreation(ViewModelCreation.PROVIDER) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return provider.get();
+            }
+        });
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one with a {@link SavedStateHandle} in the
+     * scope, only holding it softly. See {@link #getSoft(Class, Provider)}. The handle is kept by the
+     * placeholder, so if the ViewModel is created again it's given the same handle and its state
+     * survives.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param factory        The factory of the ViewModel.
+     * @param <T>            The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the
+     *                                  constructor or the given viewModelClass is a local or
+     *                                  anonymous class. In the latter case, you must use
+     *                                  {@link #getSoft(String, SavedStateFactory)} instead so a
+     *                                  unique key can be derived.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getSoft(@NonNull Class<T> viewModelClass, @NonNull SavedStateFactory<T> factory) {
+        return getSoft(defaultKey(viewModelClass), factory);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one with a {@link SavedStateHandle} in the
+     * scope, only holding it softly. See {@link #getSoft(Class, SavedStateFactory)}.
+     *
+     * @param key     The key to use to identify the ViewModel.
+     * @param factory The factory of the ViewModel.
+     * @param <T>     The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T getSoft(@NonNull String key, @NonNull final SavedStateFactory<T> factory) {
+        //noinspection unchecked
+        return (T) getSoft(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return factory.create(handle);
+            }
+        });
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param provider The provider of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <T>      The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If the given provider is a local or anonymous class. If this
+     *                                  is the case, you must use {@link #getAsync(String, Provider, Executor, ViewModelCallback)}
+     *                                  or {@link #getAsync(Class, Provider, Executor, ViewModelCallback)}
+     *                                  instead so a unique key can be derived.
+     */
+    @MainThread
+    public <T extends ViewModel> void getAsync(@NonNull Provider<T> provider, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        getAsync(defaultKey(provider.getClass()), provider, executor, callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param provider       The provider of the ViewModel to create an instance of it if it is not
+     *                       present.
+     * @param executor       The executor to create the ViewModel on.
+     * @param callback       The callback to receive the ViewModel.
+     * @param <T>            The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     */
+    @MainThread
+    public <T extends ViewModel> void getAsync(@NonNull Class<T> viewModelClass, @NonNull Provider<T> provider, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        getAsync(defaultKey(viewModelClass), provider, executor, callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param key      The key to use to identify the ViewModel.
+     * @param provider The provider of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <T>      The type parameter for the ViewModel.
+     */
+    @MainThread
+    public <T extends ViewModel> void getAsync(@NonNull String key, @NonNull final Provider<T> provider, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        if (attach(key, callback)) {
+            return;
+        }
+        start(key, new ViewModelCreation(ViewModelCreation.PROVIDER) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return provider.get();
+            }
+        }, executor).addCallback(callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param factory  The factory of the ViewModel.
+     * @param creator  The factory creator of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <F>      The type parameter for the factory.
+     * @param <T>      The type parameter for the ViewModel.
+     */
+    @MainThread
+    public <F, T extends ViewModel> void getAsync(@NonNull F factory, @NonNull FactoryCreator<F, T> creator, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        getAsync(defaultKey(factory.getClass()), factory, creator, executor, callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param key      The key to use to identify the ViewModel.
+     * @param factory  The factory of the ViewModel.
+     * @param creator  The factory creator of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <F>      The type parameter for the factory.
+     * @param <T>      The type parameter for the ViewModel.
+     */
+    @MainThread
+    public <F, T extends ViewModel> void getAsync(@NonNull String key, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        if (attach(key, callback)) {
+            return;
+        }
+        start(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return creator.create(factory);
+            }
+        }, executor).addCallback(callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately. The {@link SavedStateHandle} is created on the main thread before the factory is
+     * run.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param viewModelClass The view model class, used as a unique key.
+     * @param factory        The factory to create an instance of the ViewModel of it is not already
+     *                       present.
+     * @param executor       The executor to create the ViewModel on.
+     * @param callback       The callback to receive the ViewModel.
+     * @param <T>            The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @MainThread
+    public <T extends ViewModel> void getAsync(@NonNull Class<T> viewModelClass, @NonNull SavedStateFactory<T> factory, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        getAsync(defaultKey(viewModelClass), factory, executor, callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately. The {@link SavedStateHandle} is created on the main thread before the factory is
+     * run.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param key      The key to use to identify the ViewModel.
+     * @param factory  The factory to create an instance of the ViewModel of it is not already
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <T>      The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @MainThread
+    public <T extends ViewModel> void getAsync(@NonNull String key, @NonNull final SavedStateFactory<T> factory, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        if (attach(key, callback)) {
+            return;
+        }
+        start(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return factory.create(handle);
+            }
+        }, executor).addCallback(callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately. The {@link SavedStateHandle} is created on the main thread before the factory is
+     * run.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param factory  The factory of the ViewModel.
+     * @param creator  The factory creator of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <F>      The type parameter for the factory.
+     * @param <T>      The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @MainThread
+    public <F, T extends ViewModel> void getAsync(@NonNull F factory, @NonNull SavedStateFactoryCreator<F, T> creator, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        getAsync(defaultKey(factory.getClass()), factory, creator, executor, callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one on the given {@code executor}, associated
+     * with this {@code ViewModelProvider}. The ViewModel is put in the store and passed to the
+     * {@code callback} on the main thread. If the ViewModel already exists, the callback is called
+     * immediately. The {@link SavedStateHandle} is created on the main thread before the factory is
+     * run.
+     * <p>
+     * A ViewModel is only ever created once per key. Calling a {@code get} method for the same key
+     * while it's being created will wait for that creation instead of creating another one. If the
+     * scope is destroyed before creation completes, the ViewModel is cleared and the callback is not
+     * called.
+     *
+     * @param key      The key to use to identify the ViewModel.
+     * @param factory  The factory of the ViewModel.
+     * @param creator  The factory creator of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param executor The executor to create the ViewModel on.
+     * @param callback The callback to receive the ViewModel.
+     * @param <F>      The type parameter for the factory.
+     * @param <T>      The type parameter for the ViewModel.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     */
+    @MainThread
+    public <F, T extends ViewModel> void getAsync(@NonNull String key, @NonNull final F factory, @NonNull final SavedStateFactoryCreator<F, T> creator, @NonNull Executor executor, @NonNull ViewModelCallback<T> callback) {
+        if (attach(key, callback)) {
+            return;
+        }
+        start(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY_CREATOR) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return creator.create(factory, handle);
+            }
+        }, executor).addCallback(callback);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. The ViewModel in the store is
+     * checked to be of the class of the key.
+     * <p>
+     * If the ViewModel is a {@link ResettableViewModel} a cleared instance from
+     * {@link ViewModelRecycler} is reused if there is one.
+     *
+     * @param key      The key of the ViewModel.
+     * @param provider The provider of the ViewModel to create an instance of it if it is not
+     *                 present.
+     * @param <T>      The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws ClassCastException If the ViewModel in the store for the key is of a different class.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(@NonNull ViewModelKey<T> key, @NonNull final Provider<T> provider) {
+        ViewModel viewModel = lookup(key.getKey());
+        if (viewModel == null) {
+            viewModel = create(key.getKey(), new ViewModelCreation(ViewModelCreation.PROVIDER, key.getViewModelClass()) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            });
+        }
+        return key.cast(viewModel);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. The ViewModel in the store is
+     * checked to be of the class of the key.
+     * <p>
+     * If the ViewModel is a {@link ResettableViewModel} a cleared instance from
+     * {@link ViewModelRecycler} is reused if there is one.
+     *
+     * @param key     The key of the ViewModel.
+     * @param factory The factory of the ViewModel.
+     * @param creator The factory creator of the ViewModel to create an instance of it if it is not
+     *                present.
+     * @param <F>     The type parameter for the factory.
+     * @param <T>     The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws ClassCastException If the ViewModel in the store for the key is of a different class.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(@NonNull ViewModelKey<T> key, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        ViewModel viewModel = lookup(key.getKey());
+        if (viewModel == null) {
+            viewModel = create(key.getKey(), new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR, key.getViewModelClass()) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            });
+        }
+        return key.cast(viewModel);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. The ViewModel in the store is
+     * checked to be of the class of the key.
+     *
+     * @param key     The key of the ViewModel.
+     * @param factory The factory of the ViewModel.
+     * @param <T>     The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     * @throws ClassCastException       If the ViewModel in the store for the key is of a different
+     *                                  class.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(@NonNull ViewModelKey<T> key, @NonNull final SavedStateFactory<T> factory) {
+        ViewModel viewModel = lookup(key.getKey());
+        if (viewModel == null) {
+            viewModel = create(key.getKey(), new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY, key.getViewModelClass()) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return factory.create(handle);
+                }
+            });
+        }
+        return key.cast(viewModel);
+    }
+
+    /**
+     * Returns an existing ViewModel or creates a new one in the scope (usually, a fragment or
+     * an activity), associated with this {@code ViewModelProvider}. The ViewModel in the store is
+     * checked to be of the class of the key.
+     *
+     * @param key     The key of the ViewModel.
+     * @param factory The factory of the ViewModel.
+     * @param creator The factory creator of the ViewModel to create an instance of it if it is not
+     *                present.
+     * @param <F>     The type parameter for the factory.
+     * @param <T>     The type parameter for the ViewModel.
+     * @return A ViewModel that is an instance of the given type {@code T}.
+     * @throws IllegalArgumentException If a {@link SavedStateRegistry} wasn't provided to the constructor.
+     * @throws ClassCastException       If the ViewModel in the store for the key is of a different
+     *                                  class.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(@NonNull ViewModelKey<T> key, @NonNull final F factory, @NonNull final SavedStateFactoryCreator<F, T> creator) {
+        ViewModel viewModel = lookup(key.getKey());
+        if (viewModel == null) {
+            viewModel = create(key.getKey(), new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY_CREATOR, key.getViewModelClass()) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    //noinspection ConstantConditions
+                    return creator.create(factory, handle);
+                }
+            });
+        }
+        return key.cast(viewModel);
+    }
+
+    /**
+     * Returns the {@link ViewModelPool} with the given name, creating it if it doesn't exist. Use
+     * this for ViewModels that there may be an unbounded number of, like one per item in a list,
+     * which would otherwise pile up in the store until the scope is destroyed.
+     *
+     * @param name    A name that identifies the pool in the store.
+     * @param maxSize The maximum number of ViewModels in the pool. If the pool already exists, its
+     *                max size is updated.
+     * @return The pool, which is retained as long as the scope is alive.
+     * @throws IllegalArgumentException If maxSize is not positive.
+     */
+    @NonNull
+    @MainThread
+    public ViewModelPool getPool(@NonNull String name, int maxSize) {
+        String key = POOL_KEY + ":" + name;
+        ViewModelPool pool = (ViewModelPool) ViewModelStoreBridge.get(store, key);
+        if (pool == null) {
+            pool = new ViewModelPool(maxSize);
+            ViewModelStoreBridge.put(store, key, pool);
+        } else if (pool.getMaxSize() != maxSize) {
+            pool.setMaxSize(maxSize);
+        }
+        return pool;
+    }
+
+    /**
+     * Returns a batch to create several ViewModels in parallel. Any ViewModels that are already in the
+     * store are skipped, the rest are created on a background pool and stored before
+     * {@link PrewarmBatch#execute()} returns. Later calls to {@code get} for them will then return
+     * immediately.
+     *
+     * @return A new, empty batch.
+     */
+    @NonNull
+    @MainThread
+    public PrewarmBatch prewarm() {
+        return new PrewarmBatch(this);
+    }
+
+    /**
+     * Returns the ViewModel for the given key if it's in the store. If it's being created
+     * asynchronously this waits for it instead.
+     */
+    @Nullable
+    private ViewModel lookup(@NonNull String key) {
+        ViewModel viewModel = lookupInScope(key);
+        if (viewModel == null && parent != null) {
+            viewModel = parent.lookup(key);
+        }
+        return viewModel;
+    }
+
+    /**
+     * Like {@link #lookup(String)}, but only looks in the child scopes and this scope, not the
+     * parent scopes.
+     */
+    @Nullable
+    private ViewModel lookupInScope(@NonNull String key) {
+        if (child != null) {
+            ViewModel viewModel = child.lookupInScope(key);
+            if (viewModel != null) {
+                return viewModel;
+            }
+        }
+        ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+        if (viewModel == null) {
+            ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+            if (expiry != null) {
+                viewModel = expiry.get(key);
+            }
+        }
+        if (viewModel == null) {
+            viewModel = takeConcurrent(key);
+        }
+        if (viewModel != null) {
+            InjectedViewModelListener listener = listener();
+            // getSoft() reports the hit for a soft ViewModel, as it may have been reclaimed.
+            if (listener != null && !(viewModel instanceof SoftViewModel)) {
+                listener.onViewModelHit(key, viewModel);
+            }
+        } else {
+            PendingViewModels pendingViewModels = PendingViewModels.peek(store);
+            if (pendingViewModels != null) {
+                PendingViewModels.Pending pending = pendingViewModels.get(key);
+                if (pending != null) {
+                    viewModel = pending.await();
+                }
+            }
+        }
+        return viewModel;
+    }
+
+    /**
+     * Returns true if the ViewModel for the given key is in the store of this scope, a child scope
+     * or a parent scope, or is being created asynchronously for one.
+     */
+    boolean contains(@NonNull String key) {
+        return containsInScope(key) || (parent != null && parent.contains(key));
+    }
+
+    private boolean containsInScope(@NonNull String key) {
+        if (child != null && child.containsInScope(key)) {
+            return true;
+        }
+        if (ViewModelStoreBridge.get(store, key) != null) {
+            return true;
+        }
+        ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+        if (expiry != null && expiry.contains(key)) {
+            return true;
+        }
+        PendingViewModels pendingViewModels = PendingViewModels.peek(store);
+        if (pendingViewModels != null && pendingViewModels.get(key) != null) {
+            return true;
+        }
+        ConcurrentViewModels concurrentViewModels = ConcurrentViewModels.peek(store);
+        return concurrentViewModels != null && concurrentViewModels.contains(key);
+    }
+
+    /**
+     * Passes the ViewModel for the given key to the callback if it's in the store, or adds the
+     * callback to it if it's being created asynchronously.
+     *
+     * @return true if the callback was handled, false if the ViewModel needs to be created.
+     */
+    private boolean attach(@NonNull String key, @NonNull ViewModelCallback<?> callback) {
+        return attachInScope(key, callback) || (parent != null && parent.attach(key, callback));
+    }
+
+    private boolean attachInScope(@NonNull String key, @NonNull ViewModelCallback<?> callback) {
+        if (child != null && child.attachInScope(key, callback)) {
+            return true;
+        }
+        ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+        if (viewModel == null) {
+            ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+            if (expiry != null) {
+                viewModel = expiry.get(key);
+            }
+        }
+        if (viewModel == null) {
+            viewModel = takeConcurrent(key);
+        }
+        if (viewModel != null) {
+            InjectedViewModelListener listener = listener();
+            if (listener != null) {
+                listener.onViewModelHit(key, viewModel);
+            }
+            //noinspection unchecked
+            ((ViewModelCallback<ViewModel>) callback).onViewModel(viewModel);
+            return true;
+        }
+        PendingViewModels pendingViewModels = PendingViewModels.peek(store);
+        if (pendingViewModels != null) {
+            PendingViewModels.Pending pending = pendingViewModels.get(key);
+            if (pending != null) {
+                pending.addCallback(callback);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the ViewModel a {@link ConcurrentInjectedViewModelProvider} created for the given key
+     * and puts it in the store, waiting for it if it's still being created.
+     */
+    @Nullable
+    private ViewModel takeConcurrent(@NonNull String key) {
+        ConcurrentViewModels concurrentViewModels = ConcurrentViewModels.peek(store);
+        if (concurrentViewModels == null) {
+            return null;
+        }
+        ViewModel viewModel = concurrentViewModels.take(key);
+        if (viewModel != null) {
+            put(key, viewModel);
+        }
+        return viewModel;
+    }
+
+    /**
+     * Creates the ViewModel for the given key on the calling thread and puts it in the store. If a
+     * {@link ConcurrentInjectedViewModelProvider} exists for the store, the key is claimed first so
+     * that it gets the same instance.
+     */
+    @NonNull
+    private ViewModel create(@NonNull String key, @NonNull ViewModelCreation creation) {
+        ConcurrentViewModels concurrentViewModels = ConcurrentViewModels.peek(store);
+        if (concurrentViewModels == null) {
+            return createInStore(key, creation);
+        }
+        ConcurrentViewModels.Claim claim = concurrentViewModels.claim(key);
+        if (claim == null) {
+            ViewModel viewModel = takeConcurrent(key);
+            // If creating it on the other thread failed, try again here.
+            return viewModel != null ? viewModel : create(key, creation);
+        }
+        ViewModel viewModel;
+        try {
+            viewModel = createInStore(key, creation);
+        } catch (RuntimeException | Error e) {
+            claim.fail(e);
+            throw e;
+        }
+        claim.complete(viewModel);
+        return viewModel;
+    }
+
+    @NonNull
+    private ViewModel createInStore(@NonNull String key, @NonNull ViewModelCreation creation) {
+        Class<?> viewModelClass = creation.getViewModelClass();
+        if (viewModelClass != null && !creation.needsHandle()) {
+            ViewModel recycled = ViewModelRecycler.acquire(viewModelClass);
+            if (recycled != null) {
+                ViewModelDiagnostics.record(store, key, "recycle", creation, null);
+                ViewModelTrimmer.track(recycled);
+                put(key, recycled);
+                return recycled;
+            }
+        }
+        SavedStateHandle handle = null;
+        int restoredStateSize = -1;
+        if (creation.needsHandle()) {
+            Bundle restoredState = consumeRestoredState(requireRegistry(), key);
+            restoredStateSize = SavedStateHandleBridge.restoredStateSize(restoredState);
+            handle = createHandle(key, restoredState);
+        }
+        ViewModelDiagnostics.record(store, key, "get", creation, handle);
+        ViewModel viewModel = create(key, creation, handle, restoredStateSize, listener());
+        put(key, viewModel);
+        return viewModel;
+    }
+
+    /**
+     * Returns the softly held ViewModel for the given key, creating it and its placeholder if there
+     * isn't one or creating it again with the same handle if it has been reclaimed.
+     */
+    @NonNull
+    private ViewModel getSoft(@NonNull String key, @NonNull ViewModelCreation creation) {
+        ViewModel viewModel = lookup(key);
+        if (viewModel instanceof SoftViewModel) {
+            SoftViewModel soft = (SoftViewModel) viewModel;
+            viewModel = soft.get();
+            if (viewModel == null) {
+                ViewModelDiagnostics.record(store, key, "getSoft", creation, soft.getHandle());
+                viewModel = create(key, creation, soft.getHandle(), -1, listener());
+                soft.set(viewModel);
+            } else {
+                InjectedViewModelListener listener = listener();
+                if (listener != null) {
+                    listener.onViewModelHit(key, viewModel);
+                }
+            }
+            return viewModel;
+        }
+        if (viewModel != null) {
+            return viewModel;
+        }
+        SavedStateHandle handle = null;
+        int restoredStateSize = -1;
+        if (creation.needsHandle()) {
+            Bundle restoredState = consumeRestoredState(requireRegistry(), key);
+            restoredStateSize = SavedStateHandleBridge.restoredStateSize(restoredState);
+            handle = createHandle(key, restoredState);
+        }
+        ViewModelDiagnostics.record(store, key, "getSoft", creation, handle);
+        viewModel = create(key, creation, handle, restoredStateSize, listener());
+        SoftViewModel soft = new SoftViewModel(handle);
+        soft.set(viewModel);
+        put(key, soft);
+        return viewModel;
+    }
+
+    /**
+     * Puts the newly created ViewModel in the store, unless it has an expiry.
+     */
+    private void put(@NonNull String key, @NonNull ViewModel viewModel) {
+        ViewModelExpiry expiry = ViewModelExpiry.peek(store);
+        if (expiry == null || !expiry.adopt(key, viewModel, registry)) {
+            ViewModelStoreBridge.put(store, key, viewModel);
+        }
+    }
+
+    /**
+     * Starts creating the ViewModel for the given key on the given executor. It must not already be
+     * in the store or pending. If it needs a {@link SavedStateHandle} that is created up-front on
+     * the calling thread, as the {@link SavedStateRegistry} may only be accessed from the main
+     * thread.
+     */
+    @NonNull
+    PendingViewModels.Pending start(@NonNull final String key, @NonNull final ViewModelCreation creation, @NonNull Executor executor) {
+        final SavedStateHandle handle;
+        final int restoredStateSize;
+        Runnable onFailure;
+        if (creation.needsHandle()) {
+            Bundle restoredState = consumeRestoredState(requireRegistry(), key);
+            restoredStateSize = SavedStateHandleBridge.restoredStateSize(restoredState);
+            handle = createHandle(key, restoredState);
+            onFailure = unregisterHandle(key);
+        } else {
+            handle = null;
+            restoredStateSize = -1;
+            onFailure = null;
+        }
+        ViewModelDiagnostics.record(store, key, "getAsync", creation, handle);
+        final InjectedViewModelListener listener = listener();
+        return PendingViewModels.get(store).start(key, new Callable<ViewModel>() {
+            @Override
+            public ViewModel call() {
+                return create(key, creation, handle, restoredStateSize, listener);
+            }
+        }, executor, onFailure);
+    }
+
+    /**
+     * Creates a ViewModel that isn't put in a store by this provider, for a {@link ViewModelPool} or a
+     * {@link ConcurrentInjectedViewModelProvider}, reporting it to the global listener. Like
+     * {@link #createInStore(String, ViewModelCreation)}, a recycled instance is reused if the class is
+     * known. This may be called from any thread.
+     */
+    @NonNull
+    static ViewModel createUnstored(@NonNull String key, @NonNull ViewModelCreation creation) {
+        Class<?> viewModelClass = creation.getViewModelClass();
+        if (viewModelClass != null) {
+            ViewModel recycled = ViewModelRecycler.acquire(viewModelClass);
+            if (recycled != null) {
+                ViewModelTrimmer.track(recycled);
+                return recycled;
+            }
+        }
+        return create(key, creation, null, -1, globalListener);
+    }
+
+    /**
+     * Creates the ViewModel, only timing it if there is a listener to report to.
+     */
+    private static ViewModel create(@NonNull String key, @NonNull ViewModelCreation creation, @Nullable SavedStateHandle handle, int restoredStateSize, @Nullable InjectedViewModelListener listener) {
+        ViewModelTracer tracer = ViewModelTracing.enabledTracer();
+        if (listener == null && tracer == null) {
+            ViewModel viewModel = creation.create(handle);
+            //noinspection ConstantConditions
+            if (viewModel != null) {
+                ViewModelRecycler.track(viewModel);
+                ViewModelTrimmer.track(viewModel);
+            }
+            return viewModel;
+        }
+        if (tracer != null) {
+            tracer.beginSection(ViewModelTracing.sectionName("create", key));
+        }
+        long start = System.nanoTime();
+        ViewModel viewModel;
+        try {
+            viewModel = creation.create(handle);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+        long durationNanos = System.nanoTime() - start;
+        //noinspection ConstantConditions
+        if (viewModel != null) {
+            ViewModelRecycler.track(viewModel);
+            ViewModelTrimmer.track(viewModel);
+        }
+        if (listener == null) {
+            return viewModel;
+        }
+        //noinspection ConstantConditions
+        if (viewModel != null) {
+            listener.onViewModelCreated(key, viewModel, durationNanos, restoredStateSize, Thread.currentThread());
+        }
+        return viewModel;
+    }
+
+    @Nullable
+    private InjectedViewModelListener listener() {
+        InjectedViewModelListener listener = this.listener;
+        return listener != null ? listener : globalListener;
+    }
+
+    /**
+     * Returns an action to unregister the {@link SavedStateHandle} created for the given key, so it
+     * can be created again if creating the ViewModel fails.
+     */
+    @NonNull
+    private Runnable unregisterHandle(@NonNull final String key) {
+        final SavedStateRegistry registry = this.registry;
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (registry != null) {
+                    registry.unregisterSavedStateProvider(key);
+                }
+            }
+        };
+    }
+
+    @NonNull
+    SavedStateRegistry requireRegistry() {
+        if (registry == null) {
+            throw new IllegalArgumentException("must provide a SavedStateRegistry to obtain a SavedStateHandle");
+        }
+        return registry;
+    }
+
+    /**
+     * Consumes the state previously saved for the given key.
+     */
+    @Nullable
+    static Bundle consumeRestoredState(@NonNull SavedStateRegistry registry, @NonNull String key) {
+        ViewModelTracer tracer = ViewModelTracing.enabledTracer();
+        if (tracer == null) {
+            return registry.consumeRestoredStateForKey(key);
+        }
+        tracer.beginSection(ViewModelTracing.sectionName("restore", key));
+        try {
+            return registry.consumeRestoredStateForKey(key);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Registers the provider to save the state for the given key, replacing any that is already
+     * registered if {@code replace} is true.
+     */
+    static void registerSavedStateProvider(@NonNull SavedStateRegistry registry, @NonNull String key,
+                                           @NonNull SavedStateRegistry.SavedStateProvider provider, boolean replace) {
+        ViewModelTracer tracer = ViewModelTracing.enabledTracer();
+        if (tracer != null) {
+            tracer.beginSection(ViewModelTracing.sectionName("register", key));
+        }
+        try {
+            if (replace) {
+                registry.unregisterSavedStateProvider(key);
+            }
+            registry.registerSavedStateProvider(key, provider);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    /**
+     * Creates the {@link SavedStateHandle} for the given key from its restored state, registering it
+     * to be saved with the {@link SavedStateRegistry}.
+     */
+    @NonNull
+    private SavedStateHandle createHandle(@NonNull String key, @Nullable Bundle restoredState) {
+        SavedStateHandle handle = restoreHandle(store, spill, defaultArgs, key, restoredState);
+        registerSavedStateProvider(requireRegistry(), key, savedStateProvider(store, spill, key, handle), false);
+        return handle;
+    }
+
+    /**
+     * Creates the {@link SavedStateHandle} for the given key from its restored state without
+     * registering it.
+     */
+    @NonNull
+    static SavedStateHandle restoreHandle(@NonNull ViewModelStore store, @Nullable SavedStateSpill spill,
+                                          @Nullable Bundle defaultArgs, @NonNull String key, @Nullable Bundle restoredState) {
+        if (spill != null) {
+            restoredState = spill.restore(restoredState, SpilledFiles.get(store), key);
+        }
+        return SavedStateHandleBridge.createHandle(restoredState, defaultArgs);
+    }
+
+    /**
+     * Returns the provider to register to save the given handle. It only builds the state again if
+     * a value has been set or removed since the last save, unless large values are spilled to
+     * files: a value that was changed in place wouldn't be noticed and its file would go stale, so
+     * then the state is always spilled again.
+     */
+    @NonNull
+    static SavedStateRegistry.SavedStateProvider savedStateProvider(@NonNull ViewModelStore store, @Nullable SavedStateSpill spill,
+                                                                   @NonNull String key, @NonNull SavedStateHandle handle) {
+        if (spill != null) {
+            return spill.wrap(SavedStateHandleBridge.savedStateProvider(handle), SpilledFiles.get(store), key);
+        }
+        return SavedStateHandleBridge.incrementalSavedStateProvider(handle);
+    }
+
+    /**
+     * Returns the default key for the given class, matching the one used by
+     * {@link androidx.lifecycle.ViewModelProvider}. Keys are cached so repeated lookups don't
+     * allocate.
+     *
+     * @throws IllegalArgumentException If the given class is a local or anonymous class.
+     */
+    @NonNull
+    static String defaultKey(@NonNull Class<?> keyClass) {
+        String key = DEFAULT_KEYS.get(keyClass);
+        if (key == null) {
+            ViewModelTracer tracer = ViewModelTracing.enabledTracer();
+            if (tracer != null) {
+                tracer.beginSection(ViewModelTracing.sectionName("key", keyClass.getName()));
+            }
+            try {
+                String canonicalName = keyClass.getCanonicalName();
+                if (canonicalName == null) {
+                    throw new IllegalArgumentException("Local and anonymous classes can not be ViewModels");
+                }
+                key = DEFAULT_KEY + ":" + canonicalName;
+                DEFAULT_KEYS.put(keyClass, key);
+            } finally {
+                if (tracer != null) {
+                    tracer.endSection();
+                }
+            }
+        }
+        return key;
+    }
 }
@@ -0,0 +1,10 @@
+package me.tatarka.injectedvmprovider;
+
+/**
+ * Creates an instance of a type using the given {@link LazySavedStateHandle}.
+ *
+ * @param <T>
+ */
+public interface LazySavedStateFactory<T> {
+    T create(LazySavedStateHandle handle);
+}
@@ -0,0 +1,203 @@
+package me.tatarka.injectedvmprovider;
+
+import android.os.Bundle;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModelStore;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+
+/**
+ * A {@link SavedStateHandle} that isn't set up until it's used. Obtained from
+ * {@link InjectedViewModelProvider#getWithLazyHandle(String, LazySavedStateFactory)}.
+ * <p>
+ * Creating a ViewModel with one doesn't touch the {@link SavedStateRegistry} at all, if it's never
+ * used the restored state is carried over to the next save untouched. The restored state is only
+ * unpacked on the first read, and until the first write the state is saved exactly as it was
+ * restored instead of being packed again.
+ * <p>
+ * Anything that may change the state, including {@link #getHandle()} and the {@link MutableLiveData}
+ * returned by {@link #getLiveData(String)}, counts as a write.
+ * <p>
+ * It's bound to the {@link SavedStateRegistry} of the provider that last obtained its ViewModel, so
+ * after a configuration change it restores from and saves to the new registry instead of keeping the
+ * old one, and its activity, alive.
+ */
+public final class LazySavedStateHandle {
+
+    static final String TAG_KEY = "me.tatarka.injectedvmprovider.LazySavedStateHandle";
+
+    private final ViewModelStore store;
+    @Nullable
+    private final SavedStateSpill spill;
+    @Nullable
+    private final Bundle defaultArgs;
+    private final String key;
+    private WeakReference<SavedStateRegistry> registry;
+    @Nullable
+    private SavedStateHandle handle;
+    @Nullable
+    private Bundle restoredState;
+    private boolean written;
+
+    LazySavedStateHandle(@NonNull ViewModelStore store, @Nullable SavedStateSpill spill, @Nullable Bundle defaultArgs,
+                         @NonNull String key, @NonNull SavedStateRegistry registry) {
+        this.store = store;
+        this.spill = spill;
+        this.defaultArgs = defaultArgs;
+        this.key = key;
+        this.registry = new WeakReference<>(registry);
+    }
+
+    /**
+     * Binds to the given registry, moving the state to it if it has already been read or written.
+     */
+    @MainThread
+    void bind(@NonNull SavedStateRegistry registry) {
+        if (this.registry.get() == registry) {
+            return;
+        }
+        this.registry = new WeakReference<>(registry);
+        if (handle != null) {
+            register(registry, true);
+        }
+    }
+
+    /**
+     * @see SavedStateHandle#contains(String)
+     */
+    @MainThread
+    public boolean contains(@NonNull String key) {
+        return read().contains(key);
+    }
+
+    /**
+     * @see SavedStateHandle#get(String)
+     */
+    @Nullable
+    @MainThread
+    public <T> T get(@NonNull String key) {
+        return read().get(key);
+    }
+
+    /**
+     * @see SavedStateHandle#keys()
+     */
+    @NonNull
+    @MainThread
+    public Set<String> keys() {
+        return read().keys();
+    }
+
+    /**
+     * @see SavedStateHandle#set(String, Object)
+     */
+    @MainThread
+    public <T> void set(@NonNull String key, @Nullable T value) {
+        write().set(key, value);
+    }
+
+    /**
+     * @see SavedStateHandle#remove(String)
+     */
+    @Nullable
+    @MainThread
+    public <T> T remove(@NonNull String key) {
+        return write().remove(key);
+    }
+
+    /**
+     * @see SavedStateHandle#getLiveData(String)
+     */
+    @NonNull
+    @MainThread
+    public <T> MutableLiveData<T> getLiveData(@NonNull String key) {
+        return write().getLiveData(key);
+    }
+
+    /**
+     * @see SavedStateHandle#getLiveData(String, Object)
+     */
+    @NonNull
+    @MainThread
+    public <T> MutableLiveData<T> getLiveData(@NonNull String key, T initialValue) {
+        return write().getLiveData(key, initialValue);
+    }
+
+    /**
+     * Returns the underlying {@link SavedStateHandle}, for passing to code that requires one. As it
+     * may be written to, from then on its state is packed on every save like a regular handle.
+     */
+    @NonNull
+    @MainThread
+    public SavedStateHandle getHandle() {
+        return write();
+    }
+
+    /**
+     * Returns true if the state has been read or written, i.e. it's no longer carried over untouched.
+     */
+    @MainThread
+    public boolean isMaterialized() {
+        return handle != null;
+    }
+
+    private SavedStateHandle read() {
+        SavedStateHandle handle = this.handle;
+        if (handle == null) {
+            SavedStateRegistry registry = requireRegistry();
+            Bundle restoredState = InjectedViewModelProvider.consumeRestoredState(registry, key);
+            handle = InjectedViewModelProvider.restoreHandle(store, spill, defaultArgs, key, restoredState);
+            this.handle = handle;
+            this.restoredState = restoredState;
+            // If there's nothing to unpack, the handle only holds the default args.
+            written = restoredState == null;
+            register(registry, false);
+        }
+        return handle;
+    }
+
+    private SavedStateHandle write() {
+        SavedStateHandle handle = read();
+        if (!written) {
+            written = true;
+            restoredState = null;
+            register(requireRegistry(), true);
+        }
+        return handle;
+    }
+
+    private void register(@NonNull SavedStateRegistry registry, boolean replace) {
+        SavedStateRegistry.SavedStateProvider provider;
+        final Bundle restoredState = this.restoredState;
+        if (!written && restoredState != null) {
+            // Nothing has changed yet, so save what was restored as-is.
+            provider = new SavedStateRegistry.SavedStateProvider() {
+                @NonNull
+                @Override
+                public Bundle saveState() {
+                    return restoredState;
+                }
+            };
+        } else {
+            //noinspection ConstantConditions
+            provider = InjectedViewModelProvider.savedStateProvider(store, spill, key, handle);
+        }
+        InjectedViewModelProvider.registerSavedStateProvider(registry, key, provider, replace);
+    }
+
+    @NonNull
+    private SavedStateRegistry requireRegistry() {
+        SavedStateRegistry registry = this.registry.get();
+        if (registry == null) {
+            throw new IllegalStateException("the SavedStateRegistry this handle was bound to is gone, obtain its ViewModel again first");
+        }
+        return registry;
+    }
+}
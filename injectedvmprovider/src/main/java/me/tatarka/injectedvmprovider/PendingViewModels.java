@@ -0,0 +1,259 @@
+package me.tatarka.injectedvmprovider;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Tracks ViewModels that are being created asynchronously for a {@link ViewModelStore}. This is
+ * itself kept in the store so that it's cleared along with it, which lets any ViewModels that finish
+ * after the store is cleared be cleared as well instead of being leaked.
+ */
+final class PendingViewModels extends ViewModel {
+
+    static final String KEY = "me.tatarka.injectedvmprovider.PendingViewModels";
+
+    private static Handler mainHandler;
+
+    private final ViewModelStore store;
+    private final HashMap<String, Pending> pending = new HashMap<>();
+    private boolean cleared;
+
+    private PendingViewModels(ViewModelStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the pending ViewModels for the given store, or null if nothing has been created
+     * asynchronously in it.
+     */
+    @Nullable
+    @MainThread
+    static PendingViewModels peek(@NonNull ViewModelStore store) {
+        return (PendingViewModels) ViewModelStoreBridge.get(store, KEY);
+    }
+
+    @NonNull
+    @MainThread
+    static PendingViewModels get(@NonNull ViewModelStore store) {
+        PendingViewModels pendingViewModels = peek(store);
+        if (pendingViewModels == null) {
+            pendingViewModels = new PendingViewModels(store);
+            ViewModelStoreBridge.put(store, KEY, pendingViewModels);
+        }
+        return pendingViewModels;
+    }
+
+    /**
+     * Returns the ViewModel being created for the given key, or null if there isn't one.
+     */
+    @Nullable
+    @MainThread
+    Pending get(@NonNull String key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Starts creating a ViewModel for the given key on the given executor. It must not already be
+     * pending. If creation fails or the store is cleared before it completes, {@code onFailure} is
+     * run on the main thread.
+     */
+    @NonNull
+    @MainThread
+    Pending start(@NonNull String key, @NonNull Callable<ViewModel> creator, @NonNull Executor executor, @Nullable Runnable onFailure) {
+        Pending task = new Pending(key, creator, onFailure);
+        pending.put(key, task);
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            pending.remove(key);
+            if (onFailure != null) {
+                onFailure.run();
+            }
+            throw e;
+        }
+        return task;
+    }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+    }
+
+    private static Handler mainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    /**
+     * A ViewModel that is being created. Creation happens at most once, either on the executor or, if
+     * the ViewModel is needed synchronously before the executor has gotten to it, on the main thread.
+     */
+    final class Pending extends FutureTask<ViewModel> {
+        private final String key;
+        @Nullable
+        private final Runnable onFailure;
+        private final List<ViewModelCallback<?>> callbacks = new ArrayList<>(1);
+        private boolean published;
+        @Nullable
+        private ViewModel result;
+        @Nullable
+        private Throwable error;
+
+        Pending(String key, Callable<ViewModel> creator, @Nullable Runnable onFailure) {
+            super(creator);
+            this.key = key;
+            this.onFailure = onFailure;
+        }
+
+        @NonNull
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the reason creation failed, if it has been published and failed.
+         */
+        @Nullable
+        @MainThread
+        Throwable getError() {
+            return error;
+        }
+
+        @MainThread
+        void addCallback(@NonNull ViewModelCallback<?> callback) {
+            callbacks.add(callback);
+        }
+
+        /**
+         * Blocks until the ViewModel is created, creating it on the calling thread if the executor
+         * hasn't started yet, then publishes it to the store.
+         *
+         * @return The created ViewModel or null if creation failed.
+         */
+        @Nullable
+        @MainThread
+        ViewModel await() {
+            run();
+            return publish();
+        }
+
+        @Override
+        protected void done() {
+            // If await() already published this is a no-op.
+            mainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                }
+            });
+        }
+
+        /**
+         * Puts the created ViewModel in the store and notifies any callbacks. If the store has been
+         * cleared in the meantime, the ViewModel is cleared instead.
+         */
+        @Nullable
+        @MainThread
+        private ViewModel publish() {
+            if (published) {
+                return result;
+            }
+            published = true;
+            if (pending.get(key) == this) {
+                pending.remove(key);
+            }
+
+            ViewModel viewModel;
+            Throwable error = null;
+            try {
+                viewModel = getUninterruptibly();
+                if (viewModel == null) {
+                    error = new NullPointerException("ViewModel for key " + key + " was created as null");
+                }
+            } catch (ExecutionException e) {
+                viewModel = null;
+                error = e.getCause() != null ? e.getCause() : e;
+            }
+
+            if (cleared || viewModel == null) {
+                if (viewModel != null) {
+                    ViewModelBridge.clear(viewModel);
+                }
+                if (onFailure != null) {
+                    onFailure.run();
+                }
+            }
+            if (cleared) {
+                return null;
+            }
+
+            if (viewModel != null) {
+                ConcurrentViewModels concurrentViewModels = ConcurrentViewModels.peek(store);
+                if (concurrentViewModels != null) {
+                    ViewModel published = concurrentViewModels.publish(key, viewModel);
+                    if (published != viewModel) {
+                        // Another thread created one for this key while we were creating ours.
+                        ViewModelBridge.clear(viewModel);
+                        viewModel = published;
+                    }
+                }
+                ViewModel existing = ViewModelStoreBridge.get(store, key);
+                if (existing == null) {
+                    ViewModelStoreBridge.put(store, key, viewModel);
+                } else if (existing != viewModel) {
+                    // Something else put a ViewModel under this key while we were creating ours.
+                    ViewModelBridge.clear(viewModel);
+                    viewModel = existing;
+                }
+            }
+            result = viewModel;
+            this.error = error;
+
+            for (ViewModelCallback<?> callback : callbacks) {
+                if (viewModel != null) {
+                    //noinspection unchecked
+                    ((ViewModelCallback<ViewModel>) callback).onViewModel(viewModel);
+                } else {
+                    callback.onError(error);
+                }
+            }
+            callbacks.clear();
+            return viewModel;
+        }
+
+        private ViewModel getUninterruptibly() throws ExecutionException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+/**
+ * A batch of ViewModels to create in parallel, obtained from {@link InjectedViewModelProvider#prewarm()}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * InjectedViewModelProvider provider = new InjectedViewModelProvider(this, getIntent().getExtras());
+ * provider.prewarm()
+ *         .add(vm1Provider)
+ *         .add(vm2Factory, (factory, handle) -> factory.create(handle))
+ *         .execute();
+ * // These are now already in the store.
+ * MyViewModel1 vm1 = provider.get(vm1Provider);
+ * MyViewModel2 vm2 = provider.get(vm2Factory, (factory, handle) -> factory.create(handle));
+ * }</pre>
+ */
+public final class PrewarmBatch {
+
+    private static Executor defaultExecutor;
+
+    private final InjectedViewModelProvider viewModelProvider;
+    private final List<String> keys = new ArrayList<>();
+    private final List<ViewModelCreation> creations = new ArrayList<>();
+
+    PrewarmBatch(@NonNull InjectedViewModelProvider viewModelProvider) {
+        this.viewModelProvider = viewModelProvider;
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as {@link InjectedViewModelProvider#get(Provider)}.
+     *
+     * @throws IllegalArgumentException If the given provider is a local or anonymous class.
+     */
+    @NonNull
+    public PrewarmBatch add(@NonNull Provider<? extends ViewModel> provider) {
+        return add(InjectedViewModelProvider.defaultKey(provider.getClass()), provider);
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as {@link InjectedViewModelProvider#get(Class, Provider)}.
+     *
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     */
+    @NonNull
+    public <T extends ViewModel> PrewarmBatch add(@NonNull Class<T> viewModelClass, @NonNull Provider<T> provider) {
+        return add(InjectedViewModelProvider.defaultKey(viewModelClass), provider);
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as {@link InjectedViewModelProvider#get(String, Provider)}.
+     */
+    @NonNull
+    public PrewarmBatch add(@NonNull String key, @NonNull final Provider<? extends ViewModel> provider) {
+        return add(key, new ViewModelCreation(ViewModelCreation.PROVIDER) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return provider.get();
+            }
+        });
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(Object, FactoryCreator)}.
+     */
+    @NonNull
+    public <F, T extends ViewModel> PrewarmBatch add(@NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
+        return add(InjectedViewModelProvider.defaultKey(factory.getClass()), factory, creator);
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(String, Object, FactoryCreator)}.
+     */
+    @NonNull
+    public <F, T extends ViewModel> PrewarmBatch add(@NonNull String key, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        return add(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return creator.create(factory);
+            }
+        });
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(Class, SavedStateFactory)}.
+     *
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     */
+    @NonNull
+    public <T extends ViewModel> PrewarmBatch add(@NonNull Class<T> viewModelClass, @NonNull SavedStateFactory<T> factory) {
+        return add(InjectedViewModelProvider.defaultKey(viewModelClass), factory);
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(String, SavedStateFactory)}.
+     */
+    @NonNull
+    public PrewarmBatch add(@NonNull String key, @NonNull final SavedStateFactory<? extends ViewModel> factory) {
+        return add(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                return factory.create(handle);
+            }
+        });
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(Object, SavedStateFactoryCreator)}.
+     */
+    @NonNull
+    public <F, T extends ViewModel> PrewarmBatch add(@NonNull F factory, @NonNull SavedStateFactoryCreator<F, T> creator) {
+        return add(InjectedViewModelProvider.defaultKey(factory.getClass()), factory, creator);
+    }
+
+    /**
+     * Adds a ViewModel to create, keyed the same as
+     * {@link InjectedViewModelProvider#get(String, Object, SavedStateFactoryCreator)}.
+     */
+    @NonNull
+    public <F, T extends ViewModel> PrewarmBatch add(@NonNull String key, @NonNull final F factory, @NonNull final SavedStateFactoryCreator<F, T> creator) {
+        return add(key, new ViewModelCreation(ViewModelCreation.SAVED_STATE_FACTORY_CREATOR) {
+            @Override
+            ViewModel create(@Nullable SavedStateHandle handle) {
+                //noinspection ConstantConditions
+                return creator.create(factory, handle);
+            }
+        });
+    }
+
+    /**
+     * Creates all ViewModels in the batch that aren't already in the store on a shared, bounded
+     * background pool, and returns once they have been stored.
+     *
+     * @return The errors of any ViewModels that failed to be created by key. A failure does not
+     * prevent the other ViewModels from being created.
+     * @throws IllegalArgumentException If the batch contains a ViewModel that requires a
+     *                                  {@link SavedStateHandle} and a {@link androidx.savedstate.SavedStateRegistry}
+     *                                  wasn't provided to the {@link InjectedViewModelProvider}.
+     */
+    @NonNull
+    @MainThread
+    public Map<String, Throwable> execute() {
+        return execute(defaultExecutor());
+    }
+
+    /**
+     * Creates all ViewModels in the batch that aren't already in the store on the given executor,
+     * and returns once they have been stored. Any ViewModel the executor hasn't started by the time
+     * it's needed is created on the calling thread.
+     *
+     * @param executor The executor to create the ViewModels on.
+     * @return The errors of any ViewModels that failed to be created by key. A failure does not
+     * prevent the other ViewModels from being created.
+     * @throws IllegalArgumentException If the batch contains a ViewModel that requires a
+     *                                  {@link SavedStateHandle} and a {@link androidx.savedstate.SavedStateRegistry}
+     *                                  wasn't provided to the {@link InjectedViewModelProvider}.
+     */
+    @NonNull
+    @MainThread
+    public Map<String, Throwable> execute(@NonNull Executor executor) {
+        List<PendingViewModels.Pending> tasks = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (ViewModelStoreBridge.get(viewModelProvider.store, key) != null) {
+                continue;
+            }
+            PendingViewModels pendingViewModels = PendingViewModels.peek(viewModelProvider.store);
+            PendingViewModels.Pending pending = pendingViewModels != null ? pendingViewModels.get(key) : null;
+            if (pending == null) {
+                if (viewModelProvider.contains(key)) {
+                    // A parent scope already has it.
+                    continue;
+                }
+                pending = viewModelProvider.start(key, creations.get(i), executor);
+            }
+            tasks.add(pending);
+        }
+
+        Map<String, Throwable> errors = null;
+        for (PendingViewModels.Pending pending : tasks) {
+            if (pending.await() == null && pending.getError() != null) {
+                if (errors == null) {
+                    errors = new LinkedHashMap<>();
+                }
+                errors.put(pending.getKey(), pending.getError());
+            }
+        }
+        return errors != null ? errors : Collections.<String, Throwable>emptyMap();
+    }
+
+    private static Executor defaultExecutor() {
+        if (defaultExecutor == null) {
+            int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "InjectedViewModelProvider-prewarm-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            defaultExecutor = executor;
+        }
+        return defaultExecutor;
+    }
+
+    private PrewarmBatch add(String key, ViewModelCreation creation) {
+        keys.add(key);
+        creations.add(creation);
+        return this;
+    }
+}
@@ -0,0 +1,77 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ViewModelTracer} that records the sections in memory, for checking them in tests. Each
+ * recorded section is indented by two spaces per enclosing section on the same thread.
+ */
+public final class RecordingViewModelTracer implements ViewModelTracer {
+
+    private final List<String> sections = new ArrayList<>();
+    private final ThreadLocal<ArrayDeque<String>> open = new ThreadLocal<ArrayDeque<String>>() {
+        @Override
+        protected ArrayDeque<String> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void beginSection(@NonNull String sectionName) {
+        ArrayDeque<String> open = this.open.get();
+        StringBuilder section = new StringBuilder();
+        for (int i = 0; i < open.size(); i++) {
+            section.append("  ");
+        }
+        section.append(sectionName);
+        open.push(sectionName);
+        synchronized (sections) {
+            sections.add(section.toString());
+        }
+    }
+
+    @Override
+    public void endSection() {
+        ArrayDeque<String> open = this.open.get();
+        if (open.isEmpty()) {
+            throw new IllegalStateException("endSection() called without a matching beginSection()");
+        }
+        open.pop();
+    }
+
+    /**
+     * Returns the sections begun so far, in order.
+     */
+    @NonNull
+    public List<String> getSections() {
+        synchronized (sections) {
+            return Collections.unmodifiableList(new ArrayList<>(sections));
+        }
+    }
+
+    /**
+     * Returns true if every section begun on the current thread has been ended.
+     */
+    public boolean isBalanced() {
+        return open.get().isEmpty();
+    }
+
+    /**
+     * Removes all recorded sections.
+     */
+    public void clear() {
+        synchronized (sections) {
+            sections.clear();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+
+/**
+ * Implemented by a {@link androidx.lifecycle.ViewModel} that can be reused after it has been
+ * cleared. Once cleared, the instance is kept in a small pool in {@link ViewModelRecycler} and the
+ * next {@link InjectedViewModelProvider#get(Class, javax.inject.Provider)} or
+ * {@link InjectedViewModelProvider#get(Class, Object, FactoryCreator)} for its class resets and
+ * returns it instead of creating a new one. This avoids reallocating large internal buffers when
+ * ViewModels of the same class are cleared and created again in quick succession.
+ * <p>
+ * A recycled ViewModel stays cleared as far as {@link androidx.lifecycle.ViewModel} is concerned, so
+ * it must not use {@code viewModelScope} or other closeable tags, as those stay closed. It must
+ * release anything that refers to its old scope in {@code onCleared()}.
+ */
+public interface ResettableViewModel {
+
+    /**
+     * Resets this ViewModel to the state it was in right after it was created. This is called on
+     * the main thread right before it's reused.
+     */
+    @MainThread
+    void reset();
+}
@@ -0,0 +1,274 @@
+package me.tatarka.injectedvmprovider;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves large values out of the {@link androidx.lifecycle.SavedStateHandle SavedStateHandles} of an
+ * {@link InjectedViewModelProvider} and into files, to keep the saved instance state small. Enable
+ * it with {@link InjectedViewModelProvider#setSavedStateSpill(SavedStateSpill)}.
+ * <p>
+ * On save, every value that is larger than the threshold once parcelled is written to its own file
+ * in the given directory and only a small token pointing to it is kept in the saved state. On
+ * restore, the files are read back. Files are deleted when they are replaced by a
+ * later save or when the scope is destroyed. Files that are older than the max age, for example
+ * because their task was removed while the process was dead, are deleted the first time they are
+ * accessed; a value whose file is missing is restored as if it was never saved.
+ * <p>
+ * State is saved on the main thread, so each save of a {@code SavedStateHandle} writes its large
+ * values to new files synchronously on the main thread, one file per value. As a value may have been
+ * changed in place, this happens even if nothing was set since the last save. Pick a threshold that
+ * keeps these writes rare, for values that are costly to keep in the saved state rather than for
+ * every large one.
+ * <p>
+ * Values that can't be flattened to a file, like ones that contain binders or file descriptors, are
+ * always kept in the saved state.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * InjectedViewModelProvider provider = new InjectedViewModelProvider(this, getIntent().getExtras());
+ * provider.setSavedStateSpill(new SavedStateSpill(new File(getNoBackupFilesDir(), "saved-state"), 64 * 1024));
+ * }</pre>
+ */
+public final class SavedStateSpill {
+
+    private static final String TAG = "SavedStateSpill";
+    private static final String TOKEN_KEY = "me.tatarka.injectedvmprovider.SpilledValue";
+    private static final String SUFFIX = ".parcel";
+    private static final String KEYS = "keys";
+    private static final String VALUES = "values";
+
+    private final File directory;
+    private final int thresholdBytes;
+    private final long maxAgeMillis;
+    private boolean swept;
+
+    /**
+     * Creates a spill that deletes files that haven't been used for 7 days.
+     *
+     * @param directory      An app-private directory to write the files to. It should not be used
+     *                       for anything else.
+     * @param thresholdBytes Values larger than this once parcelled are written to a file.
+     */
+    public SavedStateSpill(@NonNull File directory, int thresholdBytes) {
+        this(directory, thresholdBytes, TimeUnit.DAYS.toMillis(7));
+    }
+
+    /**
+     * @param directory      An app-private directory to write the files to. It should not be used
+     *                       for anything else.
+     * @param thresholdBytes Values larger than this once parcelled are written to a file.
+     * @param maxAgeMillis   Files older than this are considered stale and deleted.
+     */
+    public SavedStateSpill(@NonNull File directory, int thresholdBytes, long maxAgeMillis) {
+        this.directory = directory;
+        this.thresholdBytes = thresholdBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Replaces the tokens in state saved by a {@code SavedStateHandle} with the values they point
+     * to, recording the files they were read from under the given key.
+     */
+    @Nullable
+    @MainThread
+    Bundle restore(@Nullable Bundle restoredState, @NonNull SpilledFiles files, @NonNull String key) {
+        sweep();
+        if (restoredState == null) {
+            return null;
+        }
+        ArrayList<?> keys = restoredState.getParcelableArrayList(KEYS);
+        ArrayList<?> values = restoredState.getParcelableArrayList(VALUES);
+        if (keys == null || values == null || !containsToken(values)) {
+            return restoredState;
+        }
+        ArrayList<Object> newKeys = new ArrayList<>(keys.size());
+        ArrayList<Object> newValues = new ArrayList<>(values.size());
+        List<File> restoredFiles = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = values.get(i);
+            String fileName = token(value);
+            if (fileName != null) {
+                File file = new File(directory, fileName);
+                try {
+                    value = read(file);
+                    restoredFiles.add(file);
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Failed to restore " + keys.get(i) + " from " + file, e);
+                    continue;
+                }
+            }
+            newKeys.add(keys.get(i));
+            newValues.add(value);
+        }
+        files.replace(key, restoredFiles);
+        return state(newKeys, newValues);
+    }
+
+    /**
+     * Wraps the {@code SavedStateProvider} of a {@code SavedStateHandle} to spill its large values,
+     * tracking the files under the given key.
+     */
+    @NonNull
+    SavedStateRegistry.SavedStateProvider wrap(@NonNull final SavedStateRegistry.SavedStateProvider provider, @NonNull final SpilledFiles files, @NonNull final String key) {
+        return new SavedStateRegistry.SavedStateProvider() {
+            @NonNull
+            @Override
+            public Bundle saveState() {
+                return spill(provider.saveState(), files, key);
+            }
+        };
+    }
+
+    private Bundle spill(Bundle state, SpilledFiles files, String key) {
+        sweep();
+        ArrayList<?> keys = state.getParcelableArrayList(KEYS);
+        ArrayList<?> values = state.getParcelableArrayList(VALUES);
+        if (keys == null || values == null) {
+            return state;
+        }
+        ArrayList<Object> newValues = null;
+        List<File> spilledFiles = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            File file = write(value);
+            if (file != null) {
+                if (newValues == null) {
+                    newValues = new ArrayList<Object>(values);
+                }
+                newValues.set(i, token(file.getName()));
+                spilledFiles.add(file);
+            }
+        }
+        files.replace(key, spilledFiles);
+        if (newValues == null) {
+            return state;
+        }
+        return state(new ArrayList<Object>(keys), newValues);
+    }
+
+    /**
+     * Writes the value to a new file if it's over the threshold.
+     *
+     * @return The file, or null if the value should be kept in the saved state.
+     */
+    @Nullable
+    private File write(@Nullable Object value) {
+        if (value == null) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeValue(value);
+            if (parcel.dataSize() <= thresholdBytes) {
+                return null;
+            }
+            byte[] bytes = parcel.marshall();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory);
+            }
+            File file = new File(directory, UUID.randomUUID() + SUFFIX);
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            return file;
+        } catch (IOException | RuntimeException e) {
+            // Thrown by marshall() for values with binders or file descriptors.
+            Log.w(TAG, "Failed to spill value, keeping it in the saved state", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Nullable
+    private Object read(File file) throws IOException {
+        byte[] bytes;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readValue(SavedStateSpill.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Deletes stale files, once per spill.
+     */
+    private void sweep() {
+        if (swept) {
+            return;
+        }
+        swept = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX) && file.lastModified() < cutoff) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static Bundle state(ArrayList<Object> keys, ArrayList<Object> values) {
+        Bundle state = new Bundle();
+        //noinspection unchecked
+        state.putParcelableArrayList(KEYS, (ArrayList) keys);
+        //noinspection unchecked
+        state.putParcelableArrayList(VALUES, (ArrayList) values);
+        return state;
+    }
+
+    private static Bundle token(String fileName) {
+        Bundle token = new Bundle(1);
+        token.putString(TOKEN_KEY, fileName);
+        return token;
+    }
+
+    @Nullable
+    private static String token(@Nullable Object value) {
+        if (value instanceof Bundle) {
+            return ((Bundle) value).getString(TOKEN_KEY);
+        }
+        return null;
+    }
+
+    private static boolean containsToken(List<?> values) {
+        for (Object value : values) {
+            if (token(value) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
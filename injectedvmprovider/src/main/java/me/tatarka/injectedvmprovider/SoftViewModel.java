@@ -0,0 +1,66 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * The placeholder kept in the store for a ViewModel obtained with
+ * {@link InjectedViewModelProvider#getSoft(String, javax.inject.Provider)}. It only holds the
+ * ViewModel softly, but holds its {@link SavedStateHandle} strongly so that it's saved and given to
+ * the ViewModel again if it has to be created again.
+ */
+final class SoftViewModel extends ViewModel {
+
+    @Nullable
+    private final SavedStateHandle handle;
+    @Nullable
+    private SoftReference<ViewModel> reference;
+
+    SoftViewModel(@Nullable SavedStateHandle handle) {
+        this.handle = handle;
+    }
+
+    @Nullable
+    SavedStateHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Returns the ViewModel or null if it has been reclaimed.
+     */
+    @Nullable
+    @MainThread
+    ViewModel get() {
+        return reference != null ? reference.get() : null;
+    }
+
+    @MainThread
+    void set(@NonNull ViewModel viewModel) {
+        reference = new SoftReference<>(viewModel);
+    }
+
+    /**
+     * Drops the ViewModel as if it had been reclaimed, without clearing it.
+     */
+    @VisibleForTesting
+    @MainThread
+    void reclaim() {
+        reference = null;
+    }
+
+    @Override
+    protected void onCleared() {
+        ViewModel viewModel = get();
+        reference = null;
+        if (viewModel != null) {
+            ViewModelBridge.clear(viewModel);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tracks the files a {@link SavedStateSpill} has written for the {@code SavedStateHandles} of a
+ * {@link ViewModelStore}. This is itself kept in the store so that the files are deleted once the
+ * store is cleared and the saved state can no longer be restored.
+ */
+final class SpilledFiles extends ViewModel {
+
+    static final String KEY = "me.tatarka.injectedvmprovider.SpilledFiles";
+
+    private final HashMap<String, List<File>> files = new HashMap<>();
+
+    @NonNull
+    @MainThread
+    static SpilledFiles get(@NonNull ViewModelStore store) {
+        SpilledFiles spilledFiles = (SpilledFiles) ViewModelStoreBridge.get(store, KEY);
+        if (spilledFiles == null) {
+            spilledFiles = new SpilledFiles();
+            ViewModelStoreBridge.put(store, KEY, spilledFiles);
+        }
+        return spilledFiles;
+    }
+
+    /**
+     * Sets the files for the given key, deleting any it previously had that aren't in the new list.
+     */
+    synchronized void replace(@NonNull String key, @NonNull List<File> newFiles) {
+        List<File> oldFiles = newFiles.isEmpty() ? files.remove(key) : files.put(key, newFiles);
+        if (oldFiles != null) {
+            for (File file : oldFiles) {
+                if (!newFiles.contains(file)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected synchronized void onCleared() {
+        for (List<File> keyFiles : files.values()) {
+            for (File file : keyFiles) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        files.clear();
+    }
+}
@@ -0,0 +1,26 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.tracing.Trace;
+
+/**
+ * A {@link ViewModelTracer} that writes sections to the system trace, so they show up in tools like
+ * Perfetto. Sections are only built while the app is being traced.
+ */
+public final class SystemViewModelTracer implements ViewModelTracer {
+
+    @Override
+    public boolean isEnabled() {
+        return Trace.isEnabled();
+    }
+
+    @Override
+    public void beginSection(@NonNull String sectionName) {
+        Trace.beginSection(sectionName);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
@@ -0,0 +1,31 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+
+/**
+ * Implemented by a {@link androidx.lifecycle.ViewModel} that holds caches or other state it can
+ * create again, so that it can give up memory when the system is low on it. Once one is created by
+ * an {@link InjectedViewModelProvider}, {@link ViewModelTrimmer} passes on every
+ * {@link android.content.ComponentCallbacks2#onTrimMemory(int)} to it until it's cleared, starting
+ * with the ViewModels that report the largest size.
+ */
+public interface TrimmableViewModel {
+
+    /**
+     * Returns roughly how many bytes this ViewModel would free if it was trimmed at the most severe
+     * level. This is only used to decide which ViewModels to trim first, so it doesn't need to be
+     * exact but should be cheap to compute.
+     */
+    @MainThread
+    long getEstimatedSize();
+
+    /**
+     * Called when the system asks the app to trim its memory. This is called on the main thread.
+     *
+     * @param level One of the {@code TRIM_MEMORY_*} levels of
+     *              {@link android.content.ComponentCallbacks2}. The higher the level, the more
+     *              should be freed.
+     */
+    @MainThread
+    void onTrimMemory(int level);
+}
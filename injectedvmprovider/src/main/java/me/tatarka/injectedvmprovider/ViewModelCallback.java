@@ -0,0 +1,21 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the result of obtaining a ViewModel asynchronously. Methods are always called on the main
+ * thread.
+ *
+ * @param <T> The ViewModel type.
+ */
+public interface ViewModelCallback<T> {
+    /**
+     * Called with the ViewModel once it has been created and stored.
+     */
+    void onViewModel(@NonNull T viewModel);
+
+    /**
+     * Called if creating the ViewModel failed.
+     */
+    void onError(@NonNull Throwable error);
+}
@@ -0,0 +1,75 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+
+/**
+ * Creates a ViewModel once it's known not to be in the store. This unifies the different kinds of
+ * factories so the creation path is shared between {@code get}, {@code getAsync} and
+ * {@link PrewarmBatch}. Instances are only allocated on a miss.
+ */
+abstract class ViewModelCreation {
+
+    static final String PROVIDER = "Provider";
+    static final String FACTORY_CREATOR = "FactoryCreator";
+    static final String SAVED_STATE_FACTORY = "SavedStateFactory";
+    static final String SAVED_STATE_FACTORY_CREATOR = "SavedStateFactoryCreator";
+    static final String LAZY_SAVED_STATE_FACTORY = "LazySavedStateFactory";
+
+    private final String kind;
+    @Nullable
+    private final Class<?> viewModelClass;
+
+    /**
+     * @param kind The kind of factory the ViewModel is created with, one of the constants above.
+     */
+    ViewModelCreation(@NonNull String kind) {
+        this(kind, null);
+    }
+
+    /**
+     * @param kind           The kind of factory the ViewModel is created with, one of the constants
+     *                       above.
+     * @param viewModelClass The class of the ViewModel if it's known up-front, which allows a
+     *                       recycled instance to be used instead.
+     */
+    ViewModelCreation(@NonNull String kind, @Nullable Class<?> viewModelClass) {
+        this.kind = kind;
+        this.viewModelClass = viewModelClass;
+    }
+
+    /**
+     * Returns the kind of factory the ViewModel is created with.
+     */
+    @NonNull
+    String getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the class of the ViewModel, if it's known before it's created.
+     */
+    @Nullable
+    Class<?> getViewModelClass() {
+        return viewModelClass;
+    }
+
+    /**
+     * Returns true if {@link #create(SavedStateHandle)} should be passed a {@link SavedStateHandle}.
+     */
+    boolean needsHandle() {
+        //noinspection StringEquality
+        return kind == SAVED_STATE_FACTORY || kind == SAVED_STATE_FACTORY_CREATOR;
+    }
+
+    /**
+     * Creates the ViewModel.
+     *
+     * @param handle The handle for the ViewModel if {@link #needsHandle()} returns true, null
+     *               otherwise.
+     */
+    @NonNull
+    abstract ViewModel create(@Nullable SavedStateHandle handle);
+}
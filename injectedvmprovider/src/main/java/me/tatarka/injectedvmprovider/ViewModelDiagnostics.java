@@ -0,0 +1,241 @@
+package me.tatarka.injectedvmprovider;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.SavedStateHandleBridge;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the ViewModels that are alive in a {@link ViewModelStore}, for example to find out what a
+ * long-lived activity is holding on to.
+ * <p>
+ * The key and class of every ViewModel in the store are always available. When recording is enabled
+ * with {@link #setRecordingEnabled(boolean)}, ViewModels created through an
+ * {@link InjectedViewModelProvider} from then on also record when they were created, which
+ * {@code get} method created them and their {@link SavedStateHandle}, whose parcelled size is then
+ * reported. Recording is off by default so it costs nothing in production.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * if (BuildConfig.DEBUG) {
+ *     ViewModelDiagnostics.setRecordingEnabled(true);
+ * }
+ * ...
+ * ViewModelDiagnostics.dump(activity.getViewModelStore(), new PrintWriter(System.out, true));
+ * }</pre>
+ */
+public final class ViewModelDiagnostics {
+
+    private static volatile boolean recordingEnabled;
+
+    private ViewModelDiagnostics() {
+    }
+
+    /**
+     * Sets whether ViewModels created from now on record their metadata.
+     */
+    public static void setRecordingEnabled(boolean enabled) {
+        recordingEnabled = enabled;
+    }
+
+    /**
+     * Returns whether ViewModels record their metadata when they are created.
+     */
+    public static boolean isRecordingEnabled() {
+        return recordingEnabled;
+    }
+
+    /**
+     * Returns an entry for every ViewModel in the store, sorted by key. This includes ViewModels
+     * this library keeps in the store for its own bookkeeping, as well as the ViewModels they hold:
+     * those with an expiry, those created by a {@link ConcurrentInjectedViewModelProvider} that
+     * haven't been put in the store yet and those in a {@link ViewModelPool}, which are listed under
+     * the pool's key followed by their own in brackets. A ViewModel obtained with {@code getSoft} is
+     * listed with its own class while it hasn't been reclaimed.
+     */
+    @NonNull
+    @MainThread
+    public static List<Entry> inspect(@NonNull ViewModelStore store) {
+        ViewModelMetadata metadata = ViewModelMetadata.peek(store);
+        TreeMap<String, ViewModel> viewModels = new TreeMap<>();
+        for (String key : ViewModelStoreBridge.keys(store)) {
+            ViewModel viewModel = ViewModelStoreBridge.get(store, key);
+            if (viewModel == null) {
+                continue;
+            }
+            if (viewModel instanceof SoftViewModel) {
+                ViewModel softViewModel = ((SoftViewModel) viewModel).get();
+                viewModels.put(key, softViewModel != null ? softViewModel : viewModel);
+                continue;
+            }
+            viewModels.put(key, viewModel);
+            if (viewModel instanceof ViewModelExpiry) {
+                viewModels.putAll(((ViewModelExpiry) viewModel).getViewModels());
+            } else if (viewModel instanceof ConcurrentViewModels) {
+                viewModels.putAll(((ConcurrentViewModels) viewModel).getUnclaimedViewModels());
+            } else if (viewModel instanceof ViewModelPool) {
+                for (Map.Entry<String, ViewModel> entry : ((ViewModelPool) viewModel).getViewModels().entrySet()) {
+                    viewModels.put(key + "[" + entry.getKey() + "]", entry.getValue());
+                }
+            }
+        }
+        List<Entry> entries = new ArrayList<>(viewModels.size());
+        for (Map.Entry<String, ViewModel> entry : viewModels.entrySet()) {
+            String key = entry.getKey();
+            Class<? extends ViewModel> viewModelClass = entry.getValue().getClass();
+            ViewModelMetadata.Record record = metadata != null ? metadata.get(key) : null;
+            if (record != null) {
+                entries.add(new Entry(key, viewModelClass, record.createdAtMillis, record.source,
+                        record.handle != null ? parcelledSize(record.handle) : -1));
+            } else {
+                entries.add(new Entry(key, viewModelClass, -1, null, -1));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes an entry for every ViewModel in the store to the given writer, one per line, followed
+     * by the total parcelled size of their saved state.
+     */
+    @MainThread
+    public static void dump(@NonNull ViewModelStore store, @NonNull PrintWriter writer) {
+        List<Entry> entries = inspect(store);
+        long now = SystemClock.elapsedRealtime();
+        long totalSavedStateSize = 0;
+        writer.println("ViewModelStore (" + entries.size() + " ViewModels):");
+        for (Entry entry : entries) {
+            writer.print("  ");
+            writer.print(entry.getKey());
+            writer.print(" -> ");
+            writer.print(entry.getViewModelClass().getName());
+            if (entry.getSource() != null) {
+                writer.print(", via ");
+                writer.print(entry.getSource());
+            }
+            if (entry.getCreatedAtMillis() >= 0) {
+                writer.print(", age ");
+                writer.print(now - entry.getCreatedAtMillis());
+                writer.print("ms");
+            }
+            if (entry.getSavedStateSize() >= 0) {
+                writer.print(", saved state ");
+                writer.print(entry.getSavedStateSize());
+                writer.print(" bytes");
+                totalSavedStateSize += entry.getSavedStateSize();
+            }
+            writer.println();
+        }
+        writer.println("  Total saved state: " + totalSavedStateSize + " bytes");
+        writer.flush();
+    }
+
+    /**
+     * Records the metadata of a ViewModel that is being created for the given key, if recording is
+     * enabled.
+     */
+    @MainThread
+    static void record(@NonNull ViewModelStore store, @NonNull String key, @NonNull String method, @NonNull ViewModelCreation creation, @Nullable SavedStateHandle handle) {
+        if (!recordingEnabled) {
+            return;
+        }
+        String source = method + "(" + creation.getKind() + ")";
+        ViewModelMetadata.get(store).put(key, new ViewModelMetadata.Record(SystemClock.elapsedRealtime(), source, handle));
+    }
+
+    private static int parcelledSize(SavedStateHandle handle) {
+        Bundle state = SavedStateHandleBridge.savedStateProvider(handle).saveState();
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * A ViewModel in a {@link ViewModelStore}.
+     */
+    public static final class Entry {
+        private final String key;
+        private final Class<? extends ViewModel> viewModelClass;
+        private final long createdAtMillis;
+        @Nullable
+        private final String source;
+        private final int savedStateSize;
+
+        Entry(@NonNull String key, @NonNull Class<? extends ViewModel> viewModelClass, long createdAtMillis, @Nullable String source, int savedStateSize) {
+            this.key = key;
+            this.viewModelClass = viewModelClass;
+            this.createdAtMillis = createdAtMillis;
+            this.source = source;
+            this.savedStateSize = savedStateSize;
+        }
+
+        /**
+         * The key the ViewModel is stored under.
+         */
+        @NonNull
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * The class of the ViewModel.
+         */
+        @NonNull
+        public Class<? extends ViewModel> getViewModelClass() {
+            return viewModelClass;
+        }
+
+        /**
+         * When the ViewModel was created in {@link SystemClock#elapsedRealtime()} milliseconds, or
+         * -1 if it wasn't recorded.
+         */
+        public long getCreatedAtMillis() {
+            return createdAtMillis;
+        }
+
+        /**
+         * The {@link InjectedViewModelProvider} method the ViewModel was created with, like
+         * {@code "get(SavedStateFactory)"}, or null if it wasn't recorded.
+         */
+        @Nullable
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * The size in bytes of the ViewModel's {@link SavedStateHandle} state once parcelled, or -1
+         * if it doesn't have one or it wasn't recorded.
+         */
+        public int getSavedStateSize() {
+            return savedStateSize;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{key=" + key
+                    + ", viewModelClass=" + viewModelClass.getName()
+                    + ", createdAtMillis=" + createdAtMillis
+                    + ", source=" + source
+                    + ", savedStateSize=" + savedStateSize
+                    + "}";
+        }
+    }
+}
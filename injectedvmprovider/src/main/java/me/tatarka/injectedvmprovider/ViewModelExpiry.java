@@ -0,0 +1,244 @@
+package me.tatarka.injectedvmprovider;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the ViewModels of a {@link ViewModelStore} that have an expiry set with
+ * {@link InjectedViewModelProvider#setExpiry(String, long, java.util.concurrent.TimeUnit)} or
+ * {@link InjectedViewModelProvider#setExpiry(Class, long, java.util.concurrent.TimeUnit)}. Like
+ * {@link ViewModelPool} it's kept in the store and holds these ViewModels itself, as a ViewModel
+ * can't be removed from a store.
+ * <p>
+ * Expired ViewModels are cleared from an idle handler on the main looper, which only walks them
+ * once the earliest one may have expired.
+ */
+final class ViewModelExpiry extends ViewModel implements MessageQueue.IdleHandler {
+
+    static final String KEY = "me.tatarka.injectedvmprovider.ViewModelExpiry";
+
+    private final ViewModelStore store;
+    private final HashMap<String, Long> keyTtls = new HashMap<>();
+    private final HashMap<Class<?>, Long> classTtls = new HashMap<>();
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    /**
+     * No entry expires before this, though it may be later as entries are touched.
+     */
+    private long nextExpiry = Long.MAX_VALUE;
+    private boolean idleHandlerAdded;
+    private int expiredCount;
+    private final HashMap<Class<? extends ViewModel>, Integer> expiredCounts = new HashMap<>();
+
+    private ViewModelExpiry(ViewModelStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the expiry for the given store, or null if none has been set for it.
+     */
+    @Nullable
+    @MainThread
+    static ViewModelExpiry peek(@NonNull ViewModelStore store) {
+        return (ViewModelExpiry) ViewModelStoreBridge.get(store, KEY);
+    }
+
+    @NonNull
+    @MainThread
+    static ViewModelExpiry get(@NonNull ViewModelStore store) {
+        ViewModelExpiry expiry = peek(store);
+        if (expiry == null) {
+            expiry = new ViewModelExpiry(store);
+            ViewModelStoreBridge.put(store, KEY, expiry);
+        }
+        return expiry;
+    }
+
+    @MainThread
+    void setTtl(@NonNull String key, long ttlMillis) {
+        keyTtls.put(key, ttlMillis);
+    }
+
+    @MainThread
+    void setTtl(@NonNull Class<?> viewModelClass, long ttlMillis) {
+        classTtls.put(viewModelClass, ttlMillis);
+    }
+
+    /**
+     * Returns the ViewModel for the given key, marking it as used, or null if there isn't one.
+     */
+    @Nullable
+    @MainThread
+    ViewModel get(@NonNull String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = SystemClock.uptimeMillis();
+        return entry.viewModel;
+    }
+
+    @MainThread
+    boolean contains(@NonNull String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Returns the ViewModels that haven't expired yet by their key, without marking them as used.
+     */
+    @NonNull
+    @MainThread
+    Map<String, ViewModel> getViewModels() {
+        HashMap<String, ViewModel> viewModels = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            viewModels.put(entry.getKey(), entry.getValue().viewModel);
+        }
+        return viewModels;
+    }
+
+    /**
+     * Takes the newly created ViewModel for the given key if it has an expiry, either by its key or
+     * by its class.
+     *
+     * @param registry The registry its {@code SavedStateHandle} may be registered with, to unregister
+     *                 it once it expires.
+     * @return true if the ViewModel was taken, false if it should be put in the store instead.
+     */
+    @MainThread
+    boolean adopt(@NonNull String key, @NonNull ViewModel viewModel, @Nullable SavedStateRegistry registry) {
+        Long ttl = keyTtls.get(key);
+        if (ttl == null) {
+            ttl = classTtls.get(viewModel.getClass());
+            if (ttl == null) {
+                return false;
+            }
+        }
+        long now = SystemClock.uptimeMillis();
+        entries.put(key, new Entry(viewModel, ttl, now, registry));
+        nextExpiry = Math.min(nextExpiry, now + ttl);
+        if (!idleHandlerAdded) {
+            idleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of ViewModels that have been cleared because they expired.
+     */
+    @MainThread
+    int getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Returns the number of ViewModels that have been cleared because they expired, by their class.
+     */
+    @NonNull
+    @MainThread
+    Map<Class<? extends ViewModel>, Integer> getExpiredCounts() {
+        return new HashMap<>(expiredCounts);
+    }
+
+    @Override
+    public boolean queueIdle() {
+        long now = SystemClock.uptimeMillis();
+        if (now < nextExpiry) {
+            return true;
+        }
+        List<String> expiredKeys = null;
+        List<Entry> expired = null;
+        long next = Long.MAX_VALUE;
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, Entry> mapEntry = i.next();
+            Entry entry = mapEntry.getValue();
+            long expiresAt = entry.lastAccess + entry.ttl;
+            if (expiresAt <= now) {
+                i.remove();
+                if (expired == null) {
+                    expiredKeys = new ArrayList<>();
+                    expired = new ArrayList<>();
+                }
+                expiredKeys.add(mapEntry.getKey());
+                expired.add(entry);
+            } else {
+                next = Math.min(next, expiresAt);
+            }
+        }
+        nextExpiry = next;
+        if (expired != null) {
+            // Cleared after they're all removed, so onCleared() can't observe a half-swept state.
+            ConcurrentViewModels concurrentViewModels = ConcurrentViewModels.peek(store);
+            ViewModelMetadata metadata = ViewModelMetadata.peek(store);
+            for (int i = 0; i < expired.size(); i++) {
+                Entry entry = expired.get(i);
+                String key = expiredKeys.get(i);
+                SavedStateRegistry registry = entry.registry != null ? entry.registry.get() : null;
+                if (registry != null) {
+                    registry.unregisterSavedStateProvider(key);
+                }
+                if (concurrentViewModels != null) {
+                    concurrentViewModels.remove(key, entry.viewModel);
+                }
+                if (metadata != null) {
+                    metadata.remove(key);
+                }
+                ViewModelBridge.clear(entry.viewModel);
+                Class<? extends ViewModel> viewModelClass = entry.viewModel.getClass();
+                Integer count = expiredCounts.get(viewModelClass);
+                expiredCounts.put(viewModelClass, count != null ? count + 1 : 1);
+            }
+            expiredCount += expired.size();
+        }
+        idleHandlerAdded = !entries.isEmpty();
+        return idleHandlerAdded;
+    }
+
+    @Override
+    protected void onCleared() {
+        if (idleHandlerAdded) {
+            idleHandlerAdded = false;
+            Looper.myQueue().removeIdleHandler(this);
+        }
+        List<Entry> cleared = new ArrayList<>(entries.values());
+        entries.clear();
+        for (Entry entry : cleared) {
+            ViewModelBridge.clear(entry.viewModel);
+        }
+    }
+
+    private static final class Entry {
+        final ViewModel viewModel;
+        final long ttl;
+        long lastAccess;
+        /**
+         * Weak so that an expiring ViewModel doesn't keep the registry of a destroyed owner, and
+         * that owner, alive.
+         */
+        @Nullable
+        final WeakReference<SavedStateRegistry> registry;
+
+        Entry(ViewModel viewModel, long ttl, long lastAccess, @Nullable SavedStateRegistry registry) {
+            this.viewModel = viewModel;
+            this.ttl = ttl;
+            this.lastAccess = lastAccess;
+            this.registry = registry != null ? new WeakReference<>(registry) : null;
+        }
+    }
+}
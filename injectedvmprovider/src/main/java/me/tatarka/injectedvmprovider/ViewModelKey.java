@@ -0,0 +1,88 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+
+/**
+ * A typed key for a ViewModel, to declare once as a constant and pass to the {@code get} methods of
+ * {@link InjectedViewModelProvider} that take one. The key string is built when the constant is
+ * created instead of on every call, and the ViewModel in the store is checked against the expected
+ * class, so a key that's used for two different ViewModels fails right at the {@code get}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * static final ViewModelKey<MyViewModel> MY_VIEW_MODEL = ViewModelKey.of(MyViewModel.class);
+ *
+ * MyViewModel vm = new InjectedViewModelProvider(this).get(MY_VIEW_MODEL, vmProvider);
+ * }</pre>
+ * The {@code <ViewModel>_Injected} class generated for an {@link InjectedViewModel} has one as
+ * {@code VIEW_MODEL_KEY}.
+ *
+ * @param <T> The type of the ViewModel.
+ */
+public final class ViewModelKey<T extends ViewModel> {
+
+    private final String key;
+    private final Class<T> viewModelClass;
+
+    private ViewModelKey(String key, Class<T> viewModelClass) {
+        this.key = key;
+        this.viewModelClass = viewModelClass;
+    }
+
+    /**
+     * Returns a key for the given class, the same one the {@code get} methods that take a
+     * {@code Class} use.
+     *
+     * @throws IllegalArgumentException If the given viewModelClass is a local or anonymous class.
+     */
+    @NonNull
+    public static <T extends ViewModel> ViewModelKey<T> of(@NonNull Class<T> viewModelClass) {
+        return new ViewModelKey<>(InjectedViewModelProvider.defaultKey(viewModelClass), viewModelClass);
+    }
+
+    /**
+     * Returns a key for a ViewModel of the given class, the same as passing the given key to the
+     * {@code get} methods that take a {@code String}.
+     */
+    @NonNull
+    public static <T extends ViewModel> ViewModelKey<T> of(@NonNull String key, @NonNull Class<T> viewModelClass) {
+        return new ViewModelKey<>(key, viewModelClass);
+    }
+
+    /**
+     * Returns the key the ViewModel is stored under.
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the class the ViewModel is expected to be an instance of.
+     */
+    @NonNull
+    public Class<T> getViewModelClass() {
+        return viewModelClass;
+    }
+
+    /**
+     * Casts the ViewModel found for this key.
+     *
+     * @throws ClassCastException If it's not an instance of the expected class.
+     */
+    @NonNull
+    T cast(@NonNull ViewModel viewModel) {
+        if (!viewModelClass.isInstance(viewModel)) {
+            throw new ClassCastException("ViewModel for key " + key + " is a " + viewModel.getClass().getName()
+                    + ", not a " + viewModelClass.getName());
+        }
+        //noinspection unchecked
+        return (T) viewModel;
+    }
+
+    @Override
+    public String toString() {
+        return "ViewModelKey(" + key + ")";
+    }
+}
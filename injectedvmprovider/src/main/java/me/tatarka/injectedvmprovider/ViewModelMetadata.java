@@ -0,0 +1,68 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreBridge;
+
+import java.util.HashMap;
+
+/**
+ * Holds what {@link ViewModelDiagnostics} records about the ViewModels in a {@link ViewModelStore}.
+ * This is itself kept in the store so the records go away with it.
+ */
+final class ViewModelMetadata extends ViewModel {
+
+    static final String KEY = "me.tatarka.injectedvmprovider.ViewModelMetadata";
+
+    private final HashMap<String, Record> records = new HashMap<>();
+
+    @Nullable
+    @MainThread
+    static ViewModelMetadata peek(@NonNull ViewModelStore store) {
+        return (ViewModelMetadata) ViewModelStoreBridge.get(store, KEY);
+    }
+
+    @NonNull
+    @MainThread
+    static ViewModelMetadata get(@NonNull ViewModelStore store) {
+        ViewModelMetadata metadata = peek(store);
+        if (metadata == null) {
+            metadata = new ViewModelMetadata();
+            ViewModelStoreBridge.put(store, KEY, metadata);
+        }
+        return metadata;
+    }
+
+    @MainThread
+    void put(@NonNull String key, @NonNull Record record) {
+        records.put(key, record);
+    }
+
+    @Nullable
+    @MainThread
+    Record get(@NonNull String key) {
+        return records.get(key);
+    }
+
+    @MainThread
+    void remove(@NonNull String key) {
+        records.remove(key);
+    }
+
+    static final class Record {
+        final long createdAtMillis;
+        final String source;
+        @Nullable
+        final SavedStateHandle handle;
+
+        Record(long createdAtMillis, @NonNull String source, @Nullable SavedStateHandle handle) {
+            this.createdAtMillis = createdAtMillis;
+            this.source = source;
+            this.handle = handle;
+        }
+    }
+}
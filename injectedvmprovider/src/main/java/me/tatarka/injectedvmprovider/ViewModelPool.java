@@ -0,0 +1,362 @@
+package me.tatarka.injectedvmprovider;
+
+import android.util.LongSparseArray;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+/**
+ * A bounded pool of ViewModels, for example one per item in a list, obtained from
+ * {@link InjectedViewModelProvider#getPool(String, int)}. The pool is kept in the
+ * {@link androidx.lifecycle.ViewModelStore} so it survives configuration changes like any other
+ * ViewModel, but unlike the store it holds at most {@code maxSize} ViewModels. When it's full, the
+ * least recently used ViewModel is evicted and cleared, which calls its
+ * {@link ViewModel#onCleared()}. Like the ViewModels in the store, evicted
+ * {@link ResettableViewModel}s go to the {@link ViewModelRecycler}.
+ * <p>
+ * Items can be identified by a {@code long} id, which is looked up without allocating, or by a
+ * {@code String} key. The two are separate namespaces that share the same capacity.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * ViewModelPool pool = provider.getPool("items", 50);
+ *
+ * public void onBindViewHolder(ItemViewHolder holder, int position) {
+ *     Item item = items.get(position);
+ *     holder.bind(pool.get(item.getId(), itemViewModelProvider));
+ * }
+ * }</pre>
+ */
+public final class ViewModelPool extends ViewModel {
+
+    private final LongSparseArray<Entry> ids = new LongSparseArray<>();
+    private final HashMap<String, Entry> keys = new HashMap<>();
+    /**
+     * The most recently used entry, the head of a circular doubly-linked list.
+     */
+    @Nullable
+    private Entry head;
+    private int size;
+    private int maxSize;
+
+    ViewModelPool(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the ViewModel for the given id, creating it with the given provider if it's not in the
+     * pool. This may evict the least recently used ViewModel.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(long id, @NonNull Provider<T> provider) {
+        return get(id, null, provider);
+    }
+
+    /**
+     * Returns the ViewModel for the given id, creating it with the given provider if it's not in the
+     * pool. This may evict the least recently used ViewModel. As the class is known, a cleared
+     * instance from the {@link ViewModelRecycler} is reused if there is one.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(long id, @Nullable Class<T> viewModelClass, @NonNull final Provider<T> provider) {
+        Entry entry = ids.get(id);
+        if (entry == null) {
+            entry = new Entry(id, null, create("#" + id, new ViewModelCreation(ViewModelCreation.PROVIDER, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            }));
+            ids.put(id, entry);
+            add(entry);
+        } else {
+            touch(entry);
+        }
+        //noinspection unchecked
+        return (T) entry.viewModel;
+    }
+
+    /**
+     * Returns the ViewModel for the given id, creating it with the given factory if it's not in the
+     * pool. This may evict the least recently used ViewModel.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(long id, @NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
+        return get(id, null, factory, creator);
+    }
+
+    /**
+     * Returns the ViewModel for the given id, creating it with the given factory if it's not in the
+     * pool. This may evict the least recently used ViewModel. As the class is known, a cleared
+     * instance from the {@link ViewModelRecycler} is reused if there is one.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(long id, @Nullable Class<T> viewModelClass, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        Entry entry = ids.get(id);
+        if (entry == null) {
+            entry = new Entry(id, null, create("#" + id, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            }));
+            ids.put(id, entry);
+            add(entry);
+        } else {
+            touch(entry);
+        }
+        //noinspection unchecked
+        return (T) entry.viewModel;
+    }
+
+    /**
+     * Returns the ViewModel for the given key, creating it with the given provider if it's not in
+     * the pool. This may evict the least recently used ViewModel.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(@NonNull String key, @NonNull Provider<T> provider) {
+        return get(key, null, provider);
+    }
+
+    /**
+     * Returns the ViewModel for the given key, creating it with the given provider if it's not in
+     * the pool. This may evict the least recently used ViewModel. As the class is known, a cleared
+     * instance from the {@link ViewModelRecycler} is reused if there is one.
+     */
+    @NonNull
+    @MainThread
+    public <T extends ViewModel> T get(@NonNull String key, @Nullable Class<T> viewModelClass, @NonNull final Provider<T> provider) {
+        Entry entry = keys.get(key);
+        if (entry == null) {
+            entry = new Entry(0, key, create(key, new ViewModelCreation(ViewModelCreation.PROVIDER, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return provider.get();
+                }
+            }));
+            keys.put(key, entry);
+            add(entry);
+        } else {
+            touch(entry);
+        }
+        //noinspection unchecked
+        return (T) entry.viewModel;
+    }
+
+    /**
+     * Returns the ViewModel for the given key, creating it with the given factory if it's not in
+     * the pool. This may evict the least recently used ViewModel.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(@NonNull String key, @NonNull F factory, @NonNull FactoryCreator<F, T> creator) {
+        return get(key, null, factory, creator);
+    }
+
+    /**
+     * Returns the ViewModel for the given key, creating it with the given factory if it's not in
+     * the pool. This may evict the least recently used ViewModel. As the class is known, a cleared
+     * instance from the {@link ViewModelRecycler} is reused if there is one.
+     */
+    @NonNull
+    @MainThread
+    public <F, T extends ViewModel> T get(@NonNull String key, @Nullable Class<T> viewModelClass, @NonNull final F factory, @NonNull final FactoryCreator<F, T> creator) {
+        Entry entry = keys.get(key);
+        if (entry == null) {
+            entry = new Entry(0, key, create(key, new ViewModelCreation(ViewModelCreation.FACTORY_CREATOR, viewModelClass) {
+                @Override
+                ViewModel create(@Nullable SavedStateHandle handle) {
+                    return creator.create(factory);
+                }
+            }));
+            keys.put(key, entry);
+            add(entry);
+        } else {
+            touch(entry);
+        }
+        //noinspection unchecked
+        return (T) entry.viewModel;
+    }
+
+    /**
+     * Removes and clears the ViewModel for the given id, if it's in the pool.
+     */
+    @MainThread
+    public void remove(long id) {
+        Entry entry = ids.get(id);
+        if (entry != null) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * Removes and clears the ViewModel for the given key, if it's in the pool.
+     */
+    @MainThread
+    public void remove(@NonNull String key) {
+        Entry entry = keys.get(key);
+        if (entry != null) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * Removes and clears all ViewModels in the pool.
+     */
+    @MainThread
+    public void evictAll() {
+        while (head != null) {
+            evict(head.prev);
+        }
+    }
+
+    /**
+     * Returns the number of ViewModels in the pool.
+     */
+    @MainThread
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of ViewModels the pool holds.
+     */
+    @MainThread
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of ViewModels the pool holds, evicting the least recently used ones if
+     * it currently holds more.
+     *
+     * @throws IllegalArgumentException If maxSize is not positive.
+     */
+    @MainThread
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the ViewModels in the pool by their key, or by {@code #} followed by their id.
+     */
+    @NonNull
+    @MainThread
+    Map<String, ViewModel> getViewModels() {
+        HashMap<String, ViewModel> viewModels = new HashMap<>(size);
+        Entry entry = head;
+        for (int i = 0; i < size; i++) {
+            viewModels.put(entry.key != null ? entry.key : "#" + entry.id, entry.viewModel);
+            entry = entry.next;
+        }
+        return viewModels;
+    }
+
+    @Override
+    protected void onCleared() {
+        evictAll();
+    }
+
+    private ViewModel create(String key, ViewModelCreation creation) {
+        ViewModel viewModel = InjectedViewModelProvider.createUnstored(key, creation);
+        //noinspection ConstantConditions
+        if (viewModel == null) {
+            throw new NullPointerException("ViewModel was created as null");
+        }
+        return viewModel;
+    }
+
+    private void add(Entry entry) {
+        link(entry);
+        size += 1;
+        trim();
+    }
+
+    private void touch(Entry entry) {
+        if (entry != head) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    private void trim() {
+        while (size > maxSize && head != null) {
+            evict(head.prev);
+        }
+    }
+
+    private void evict(Entry entry) {
+        unlink(entry);
+        size -= 1;
+        if (entry.key != null) {
+            keys.remove(entry.key);
+        } else {
+            ids.remove(entry.id);
+        }
+        ViewModelBridge.clear(entry.viewModel);
+    }
+
+    /**
+     * Inserts the entry as the most recently used.
+     */
+    private void link(Entry entry) {
+        Entry head = this.head;
+        if (head == null) {
+            entry.next = entry;
+            entry.prev = entry;
+        } else {
+            entry.next = head;
+            entry.prev = head.prev;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+        this.head = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.next == entry) {
+            head = null;
+        } else {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            if (head == entry) {
+                head = entry.next;
+            }
+        }
+        entry.next = null;
+        entry.prev = null;
+    }
+
+    private static final class Entry {
+        final long id;
+        @Nullable
+        final String key;
+        final ViewModel viewModel;
+        Entry prev;
+        Entry next;
+
+        Entry(long id, @Nullable String key, ViewModel viewModel) {
+            this.id = id;
+            this.key = key;
+            this.viewModel = viewModel;
+        }
+    }
+}
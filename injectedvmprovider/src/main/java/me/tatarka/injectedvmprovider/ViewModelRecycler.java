@@ -0,0 +1,186 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Keeps a small pool of cleared {@link ResettableViewModel} instances for each class so they can be
+ * reused instead of being created again. A ViewModel that implements {@link ResettableViewModel} and
+ * is created by an {@link InjectedViewModelProvider} is added to the pool of its class when it's
+ * cleared, as long as the pool isn't full. A later miss for that class takes it out of the pool and
+ * resets it before falling back to the {@code Provider} or {@code FactoryCreator}.
+ * <p>
+ * Pooled instances are kept across scopes until they're reused or {@link #clear()} is called, so
+ * keep the pool size small.
+ */
+public final class ViewModelRecycler {
+
+    /**
+     * The default number of instances kept per class.
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = 2;
+
+    private static final String TAG_KEY = "me.tatarka.injectedvmprovider.ViewModelRecycler";
+
+    private static final HashMap<Class<?>, ArrayDeque<ViewModel>> pools = new HashMap<>();
+    private static int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+    private static int hitCount;
+    private static int missCount;
+    private static int recycledCount;
+
+    private ViewModelRecycler() {
+    }
+
+    /**
+     * Sets the number of cleared instances kept per class. Pools that are larger than this are
+     * trimmed. Set to 0 to disable recycling.
+     *
+     * @throws IllegalArgumentException If maxPoolSize is negative.
+     */
+    public static synchronized void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize < 0) {
+            throw new IllegalArgumentException("maxPoolSize must not be negative");
+        }
+        ViewModelRecycler.maxPoolSize = maxPoolSize;
+        for (Iterator<ArrayDeque<ViewModel>> i = pools.values().iterator(); i.hasNext(); ) {
+            ArrayDeque<ViewModel> pool = i.next();
+            while (pool.size() > maxPoolSize) {
+                pool.removeLast();
+            }
+            if (pool.isEmpty()) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cleared instances kept per class.
+     */
+    public static synchronized int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Returns the number of cleared instances currently pooled for the given class.
+     */
+    public static synchronized int getPoolSize(@NonNull Class<? extends ViewModel> viewModelClass) {
+        ArrayDeque<ViewModel> pool = pools.get(viewModelClass);
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * Returns the number of times a pooled instance was reused instead of creating a new one.
+     */
+    public static synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of times a {@link ResettableViewModel} had to be created because its pool
+     * was empty.
+     */
+    public static synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of cleared instances that were added to a pool.
+     */
+    public static synchronized int getRecycledCount() {
+        return recycledCount;
+    }
+
+    /**
+     * Resets the hit, miss and recycled counts to 0.
+     */
+    public static synchronized void resetCounts() {
+        hitCount = 0;
+        missCount = 0;
+        recycledCount = 0;
+    }
+
+    /**
+     * Drops all pooled instances, for example when the app is low on memory.
+     */
+    public static synchronized void clear() {
+        pools.clear();
+    }
+
+    /**
+     * Takes a cleared instance of the given class out of its pool and resets it.
+     *
+     * @return The reset instance or null if the class isn't a {@link ResettableViewModel} or its pool
+     * is empty.
+     */
+    @Nullable
+    static ViewModel acquire(@NonNull Class<?> viewModelClass) {
+        if (!ResettableViewModel.class.isAssignableFrom(viewModelClass)) {
+            return null;
+        }
+        ViewModel viewModel;
+        synchronized (ViewModelRecycler.class) {
+            ArrayDeque<ViewModel> pool = pools.get(viewModelClass);
+            viewModel = pool != null ? pool.pollFirst() : null;
+            if (viewModel == null) {
+                missCount++;
+                return null;
+            }
+            if (pool.isEmpty()) {
+                pools.remove(viewModelClass);
+            }
+            hitCount++;
+        }
+        ((ResettableViewModel) viewModel).reset();
+        return viewModel;
+    }
+
+    /**
+     * Arranges for the given newly created ViewModel to be pooled once it's cleared, if it's a
+     * {@link ResettableViewModel}. This must not be called for an instance that came from
+     * {@link #acquire(Class)}, it's already tracked.
+     */
+    static void track(@NonNull ViewModel viewModel) {
+        if (viewModel instanceof ResettableViewModel) {
+            ViewModelBridge.setTagIfAbsent(viewModel, TAG_KEY, new Recycle(viewModel));
+        }
+    }
+
+    private static synchronized void release(@NonNull ViewModel viewModel) {
+        Class<?> viewModelClass = viewModel.getClass();
+        ArrayDeque<ViewModel> pool = pools.get(viewModelClass);
+        if (pool == null) {
+            if (maxPoolSize == 0) {
+                return;
+            }
+            pool = new ArrayDeque<>(maxPoolSize);
+            pools.put(viewModelClass, pool);
+        } else if (pool.size() >= maxPoolSize) {
+            return;
+        }
+        pool.addFirst(viewModel);
+        recycledCount++;
+    }
+
+    /**
+     * Kept as a tag on the ViewModel, which closes it every time the ViewModel is cleared.
+     */
+    private static final class Recycle implements Closeable {
+        private final ViewModel viewModel;
+
+        Recycle(ViewModel viewModel) {
+            this.viewModel = viewModel;
+        }
+
+        @Override
+        public void close() {
+            release(viewModel);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives trace sections around the work an {@link InjectedViewModelProvider} does when creating a
+ * ViewModel: deriving its key, calling the provider or factory, and restoring and registering its
+ * {@code SavedStateHandle}. Set one with {@link InjectedViewModelProvider#setTracer(ViewModelTracer)}.
+ * <p>
+ * Use {@link SystemViewModelTracer} to see the sections in a system trace, or
+ * {@link RecordingViewModelTracer} to check them in tests.
+ */
+public interface ViewModelTracer {
+
+    /**
+     * Returns true if sections should be traced right now. Section names are only built when this
+     * returns true.
+     */
+    boolean isEnabled();
+
+    /**
+     * Begins a section on the current thread. Every call is matched by a call to
+     * {@link #endSection()} on the same thread, even if the traced work throws.
+     */
+    void beginSection(@NonNull String sectionName);
+
+    /**
+     * Ends the most recently begun section on the current thread.
+     */
+    void endSection();
+}
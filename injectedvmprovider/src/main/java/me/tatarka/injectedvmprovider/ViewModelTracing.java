@@ -0,0 +1,45 @@
+package me.tatarka.injectedvmprovider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Holds the current {@link ViewModelTracer}.
+ */
+final class ViewModelTracing {
+
+    private static final String DEFAULT_KEY_PREFIX = "androidx.lifecycle.ViewModelProvider.DefaultKey:";
+    /**
+     * The maximum length of a system trace section name.
+     */
+    private static final int MAX_LENGTH = 127;
+
+    @Nullable
+    static volatile ViewModelTracer tracer;
+
+    private ViewModelTracing() {
+    }
+
+    /**
+     * Returns the tracer if tracing is enabled, null otherwise.
+     */
+    @Nullable
+    static ViewModelTracer enabledTracer() {
+        ViewModelTracer tracer = ViewModelTracing.tracer;
+        return tracer != null && tracer.isEnabled() ? tracer : null;
+    }
+
+    /**
+     * Returns the name of the section for the given action on the given key. For default keys only
+     * the class name is used, and the name is shortened from the start to fit in a system trace.
+     */
+    @NonNull
+    static String sectionName(@NonNull String action, @NonNull String key) {
+        String name = key.startsWith(DEFAULT_KEY_PREFIX) ? key.substring(DEFAULT_KEY_PREFIX.length()) : key;
+        String sectionName = "InjectedViewModel." + action + " " + name;
+        if (sectionName.length() > MAX_LENGTH) {
+            sectionName = sectionName.substring(sectionName.length() - MAX_LENGTH);
+        }
+        return sectionName;
+    }
+}
@@ -0,0 +1,158 @@
+package me.tatarka.injectedvmprovider;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelBridge;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Passes memory pressure signals on to the live {@link TrimmableViewModel}s created by any
+ * {@link InjectedViewModelProvider}, including the ones in the stores of activities that are in
+ * the background. Call {@link #install(Context)} once, for example in
+ * {@link android.app.Application#onCreate()}, to have them trimmed whenever the system calls
+ * {@link ComponentCallbacks2#onTrimMemory(int)}.
+ * <p>
+ * ViewModels are trimmed largest first, by their {@link TrimmableViewModel#getEstimatedSize()}. At
+ * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} and above the pooled instances of
+ * {@link ViewModelRecycler} are dropped as well.
+ */
+public final class ViewModelTrimmer {
+
+    private static final String TAG_KEY = "me.tatarka.injectedvmprovider.ViewModelTrimmer";
+
+    /**
+     * Weak so that a store that is never cleared doesn't keep its ViewModels alive through this.
+     */
+    private static final WeakHashMap<ViewModel, Boolean> live = new WeakHashMap<>();
+    private static boolean installed;
+
+    private ViewModelTrimmer() {
+    }
+
+    /**
+     * Trims the live ViewModels whenever the system asks the app to trim its memory. Calling this
+     * more than once has no effect.
+     */
+    @MainThread
+    public static void install(@NonNull Context context) {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trim(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Trims all live {@link TrimmableViewModel}s at the given level, largest first. This is called
+     * for you after {@link #install(Context)}.
+     *
+     * @param level One of the {@code TRIM_MEMORY_*} levels of {@link ComponentCallbacks2}.
+     */
+    @MainThread
+    public static void trim(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            ViewModelRecycler.clear();
+        }
+        List<Entry> entries;
+        synchronized (ViewModelTrimmer.class) {
+            entries = new ArrayList<>(live.size());
+            for (ViewModel viewModel : live.keySet()) {
+                entries.add(new Entry((TrimmableViewModel) viewModel));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (Entry entry : entries) {
+            entry.size = entry.viewModel.getEstimatedSize();
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.size < e2.size ? 1 : (e1.size == e2.size ? 0 : -1);
+            }
+        });
+        for (Entry entry : entries) {
+            entry.viewModel.onTrimMemory(level);
+        }
+    }
+
+    /**
+     * Returns the number of live {@link TrimmableViewModel}s that would be trimmed.
+     */
+    public static synchronized int getLiveCount() {
+        return live.size();
+    }
+
+    /**
+     * Starts trimming the given ViewModel, if it's a {@link TrimmableViewModel}, until it's
+     * cleared. This is also called for a recycled instance when it's reused.
+     */
+    static void track(@NonNull ViewModel viewModel) {
+        if (!(viewModel instanceof TrimmableViewModel)) {
+            return;
+        }
+        synchronized (ViewModelTrimmer.class) {
+            live.put(viewModel, Boolean.TRUE);
+        }
+        // A recycled instance stays cleared, so setting the tag again would close it right away.
+        // The tag from when it was created is still there and closed on every clear.
+        if (ViewModelBridge.getTag(viewModel, TAG_KEY) == null) {
+            ViewModelBridge.setTagIfAbsent(viewModel, TAG_KEY, new Untrack(viewModel));
+        }
+    }
+
+    private static synchronized void untrack(@NonNull ViewModel viewModel) {
+        live.remove(viewModel);
+    }
+
+    private static final class Entry {
+        final TrimmableViewModel viewModel;
+        long size;
+
+        Entry(TrimmableViewModel viewModel) {
+            this.viewModel = viewModel;
+        }
+    }
+
+    /**
+     * Kept as a tag on the ViewModel, which closes it every time the ViewModel is cleared.
+     */
+    private static final class Untrack implements Closeable {
+        private final ViewModel viewModel;
+
+        Untrack(ViewModel viewModel) {
+            this.viewModel = viewModel;
+        }
+
+        @Override
+        public void close() {
+            untrack(viewModel);
+        }
+    }
+}
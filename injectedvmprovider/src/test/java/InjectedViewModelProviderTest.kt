@@ -1,19 +1,53 @@
+import android.content.ComponentCallbacks2
 import android.os.Bundle
+import android.os.Looper
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule
 import androidx.lifecycle.*
 import androidx.savedstate.SavedStateRegistry
 import androidx.savedstate.SavedStateRegistryController
 import androidx.savedstate.SavedStateRegistryOwner
+import me.tatarka.injectedvmprovider.ConcurrentInjectedViewModelProvider
+import me.tatarka.injectedvmprovider.FactoryCreator
+import me.tatarka.injectedvmprovider.InjectedViewModelListener
 import me.tatarka.injectedvmprovider.InjectedViewModelProvider
+import me.tatarka.injectedvmprovider.LazySavedStateHandle
+import me.tatarka.injectedvmprovider.RecordingViewModelTracer
+import me.tatarka.injectedvmprovider.ResettableViewModel
+import me.tatarka.injectedvmprovider.SavedStateFactory
+import me.tatarka.injectedvmprovider.SavedStateFactoryCreator
+import me.tatarka.injectedvmprovider.SavedStateSpill
+import me.tatarka.injectedvmprovider.TrimmableViewModel
+import me.tatarka.injectedvmprovider.ViewModelCallback
+import me.tatarka.injectedvmprovider.ViewModelDiagnostics
+import me.tatarka.injectedvmprovider.ViewModelKey
+import me.tatarka.injectedvmprovider.ViewModelRecycler
+import me.tatarka.injectedvmprovider.ViewModelTrimmer
+import me.tatarka.injectedvmprovider.reclaimSoftViewModel
 import org.junit.Rule
+import org.junit.rules.TemporaryFolder
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
 import org.robolectric.annotation.Config
+import java.io.File
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.lang.management.ManagementFactory
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import javax.inject.Provider
 import kotlin.test.Test
 import kotlin.test.assertEquals
 import kotlin.test.assertFails
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertNull
 import kotlin.test.assertSame
+import kotlin.test.assertTrue
 
 @Config(manifest = Config.NONE)
 @RunWith(RobolectricTestRunner::class)
@@ -22,6 +56,9 @@ class InjectedViewModelProviderTest {
     @get:Rule
     val instantTaskExecutor = InstantTaskExecutorRule()
 
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
     private val viewModelProvider = InjectedViewModelProvider(ViewModelStore())
 
     @Test
@@ -127,6 +164,789 @@ class InjectedViewModelProviderTest {
         assertEquals("value", vm.handle["key"])
     }
 
+    @Test
+    fun `unused lazy SavedStateHandle carries its restored state over`() {
+        val key = "lazy"
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider =
+                InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+            viewModelProvider.getWithLazyHandle(key, ::ViewModel4).handle["key"] = "value"
+            savedState.save()
+        }
+
+        val resaved = run {
+            val savedState = SavedState(state)
+            val viewModelProvider =
+                InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+            val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+            assertFalse(vm.handle.isMaterialized)
+            savedState.save()
+        }
+
+        val savedState = SavedState(resaved)
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+        assertEquals("value", vm.handle.get<String>("key"))
+    }
+
+    @Test
+    fun `lazy SavedStateHandle restores on read and saves on write`() {
+        val key = "lazy"
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider =
+                InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+            viewModelProvider.getWithLazyHandle(key, ::ViewModel4).handle["key"] = "value"
+            savedState.save()
+        }
+
+        val resaved = run {
+            val savedState = SavedState(state)
+            val viewModelProvider =
+                InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+            val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+            assertEquals("value", vm.handle.get<String>("key"))
+            vm.handle["key2"] = "value2"
+            savedState.save()
+        }
+
+        val savedState = SavedState(resaved)
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+        assertEquals("value", vm.handle.get<String>("key"))
+        assertEquals("value2", vm.handle.get<String>("key2"))
+    }
+
+    @Test
+    fun `lazy SavedStateHandle saves to the registry of the recreated owner`() {
+        val key = "lazy"
+        val store = ViewModelStore()
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider = InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+            viewModelProvider.getWithLazyHandle(key, ::ViewModel4).handle["key"] = "value"
+            savedState.save()
+        }
+
+        val resaved = run {
+            val savedState = SavedState(state)
+            val viewModelProvider = InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+            val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+            vm.handle["key2"] = "value2"
+            savedState.save()
+        }
+
+        val savedState = SavedState(resaved)
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        val vm = viewModelProvider.getWithLazyHandle(key, ::ViewModel4)
+        assertEquals("value", vm.handle.get<String>("key"))
+        assertEquals("value2", vm.handle.get<String>("key2"))
+    }
+
+    @Test
+    fun `large SavedStateHandle values are spilled to files and restored`() {
+        val spill = SavedStateSpill(tempFolder.newFolder(), 1024)
+        val large = "x".repeat(4096)
+        val store = ViewModelStore()
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider =
+                InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+            viewModelProvider.setSavedStateSpill(spill)
+            val vm = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+                factory.create(handle)
+            }
+            vm.handle["large"] = large
+            vm.handle["small"] = "small"
+            savedState.save()
+        }
+        assertEquals(1, spilledFiles().size)
+
+        val savedState = SavedState(state)
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        viewModelProvider.setSavedStateSpill(spill)
+        val vm = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+            factory.create(handle)
+        }
+
+        assertEquals(large, vm.handle["large"])
+        assertEquals("small", vm.handle["small"])
+        store.clear()
+        assertEquals(0, spilledFiles().size)
+    }
+
+    @Test
+    fun `spilled values changed in place are saved again`() {
+        val spill = SavedStateSpill(tempFolder.newFolder(), 1024)
+        val store = ViewModelStore()
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider =
+                InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+            viewModelProvider.setSavedStateSpill(spill)
+            val vm = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+                factory.create(handle)
+            }
+            val list = arrayListOf("x".repeat(4096))
+            vm.handle["list"] = list
+            savedState.save()
+            list.add("added")
+            savedState.save()
+        }
+        assertEquals(1, spilledFiles().size)
+
+        val savedState = SavedState(state)
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        viewModelProvider.setSavedStateSpill(spill)
+        val vm = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+            factory.create(handle)
+        }
+
+        assertEquals(listOf("x".repeat(4096), "added"), vm.handle.get<List<String>>("list"))
+    }
+
+    @Test
+    fun `unchanged SavedStateHandle reuses its last saved state`() {
+        val handle = SavedStateHandle()
+        val provider = SavedStateHandleBridge.incrementalSavedStateProvider(handle)
+        handle["key"] = "value"
+        val first = provider.saveState()
+
+        assertSame(first, provider.saveState())
+
+        handle["key"] = "value2"
+        val second = provider.saveState()
+        assertNotSame(first, second)
+        assertSame(second, provider.saveState())
+
+        handle.remove<String>("key")
+        assertNotSame(second, provider.saveState())
+    }
+
+    @Test
+    fun `getting an existing ViewModel allocates nothing`() {
+        val savedState = SavedState()
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        val creator = FactoryCreator<ViewModel1Factory, ViewModel1> { it.create("arg") }
+        val savedStateCreator =
+            SavedStateFactoryCreator<ViewModel3Factory, ViewModel3> { factory, handle -> factory.create(handle) }
+        val savedStateFactory = SavedStateFactory { handle -> ViewModel3(handle) }
+        val lookups = Runnable {
+            viewModelProvider.get(ViewModel1Provider)
+            viewModelProvider.get(ViewModel2::class.java, ViewModel2Provider)
+            viewModelProvider.get("key", ViewModel1Provider)
+            viewModelProvider.get(ViewModel1Factory, creator)
+            viewModelProvider.get("factoryKey", ViewModel1Factory, creator)
+            viewModelProvider.get(ViewModel3Factory, savedStateCreator)
+            viewModelProvider.get("savedStateKey", ViewModel3Factory, savedStateCreator)
+            viewModelProvider.get(ViewModel3::class.java, savedStateFactory)
+        }
+        // Populate the store and warm up the jit.
+        repeat(10_000) { lookups.run() }
+
+        val iterations = 10_000
+        val overhead = allocatedBytes(iterations) { }
+        val allocated = allocatedBytes(iterations) { lookups.run() }
+
+        assertEquals(0, (allocated - overhead) / iterations)
+    }
+
+    @Test
+    fun `ViewModel is created on the executor and delivered on the main thread`() {
+        val executor = QueueExecutor()
+        var result: ViewModel1? = null
+        viewModelProvider.getAsync(ViewModel1Provider, executor, callback<ViewModel1> { result = it })
+
+        assertNull(result)
+        executor.runAll()
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals("arg1", result!!.arg)
+        assertSame(result, viewModelProvider.get(ViewModel1Provider))
+    }
+
+    @Test
+    fun `get while a ViewModel is being created asynchronously only creates it once`() {
+        val executor = QueueExecutor()
+        var count = 0
+        val provider = Provider { count++; ViewModel1("async") }
+        var result: ViewModel1? = null
+        viewModelProvider.getAsync(ViewModel1::class.java, provider, executor, callback<ViewModel1> { result = it })
+
+        val vm = viewModelProvider.get(ViewModel1::class.java, provider)
+        executor.runAll()
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals(1, count)
+        assertSame(vm, result)
+    }
+
+    @Test
+    fun `getAsync with a Provider or FactoryCreator doesn't need a SavedStateRegistry`() {
+        val executor = QueueExecutor()
+        var fromProvider: ViewModel1? = null
+        var fromCreator: ViewModel1? = null
+        viewModelProvider.getAsync("provider", ViewModel1Provider, executor, callback<ViewModel1> { fromProvider = it })
+        viewModelProvider.getAsync("creator", ViewModel1Factory, FactoryCreator<ViewModel1Factory, ViewModel1> { it.create("arg") }, executor, callback<ViewModel1> { fromCreator = it })
+
+        executor.runAll()
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals("arg1", fromProvider!!.arg)
+        assertEquals("arg", fromCreator!!.arg)
+    }
+
+    @Test
+    fun `ViewModel created asynchronously after the store is cleared is cleared`() {
+        val store = ViewModelStore()
+        val executor = QueueExecutor()
+        var result: ViewModel1? = null
+        val vm = ViewModel1("orphan")
+        InjectedViewModelProvider(store).getAsync(ViewModel1::class.java, Provider { vm }, executor, callback<ViewModel1> { result = it })
+
+        store.clear()
+        executor.runAll()
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertNull(result)
+        assertTrue(vm.cleared)
+    }
+
+    @Test
+    fun `prewarm stores every ViewModel and isolates failures`() {
+        val error = IllegalStateException("failed")
+        val errors = viewModelProvider.prewarm()
+            .add(ViewModel1Provider)
+            .add("failing", Provider<ViewModel2> { throw error })
+            .add(ViewModel2::class.java, ViewModel2Provider)
+            .execute(QueueExecutor())
+
+        assertEquals(mapOf("failing" to error), errors)
+        val vm1 = viewModelProvider.get(ViewModel1Provider)
+        assertEquals("arg1", vm1.arg)
+        assertSame(vm1, viewModelProvider.get(ViewModel1Provider))
+        assertSame(
+            viewModelProvider.get(ViewModel2::class.java, ViewModel2Provider),
+            viewModelProvider.get(ViewModel2::class.java, ViewModel2Provider)
+        )
+    }
+
+    @Test
+    fun `listener is notified of creation and hits`() {
+        val state = run {
+            val savedState = SavedState()
+            val viewModelProvider =
+                InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+            val vm = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+                factory.create(handle)
+            }
+            vm.handle["key1"] = "value1"
+            vm.handle["key2"] = "value2"
+            savedState.save()
+        }
+        val listener = RecordingListener()
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), SavedState(state).savedStateRegistry, null)
+        viewModelProvider.setListener(listener)
+
+        val vm1 = viewModelProvider.get(ViewModel1Provider)
+        viewModelProvider.get(ViewModel1Provider)
+        val vm3 = viewModelProvider.get(ViewModel3Factory) { factory, handle ->
+            factory.create(handle)
+        }
+
+        assertEquals(
+            listOf(
+                "created ${vm1.javaClass.name} -1 ${Thread.currentThread().name}",
+                "hit ${vm1.javaClass.name}",
+                "created ${vm3.javaClass.name} 2 ${Thread.currentThread().name}"
+            ),
+            listener.events
+        )
+    }
+
+    @Test
+    fun `tracer records sections around creating a ViewModel`() {
+        val tracer = RecordingViewModelTracer()
+        val savedState = SavedState()
+        val viewModelProvider =
+            InjectedViewModelProvider(ViewModelStore(), savedState.savedStateRegistry, null)
+        InjectedViewModelProvider.setTracer(tracer)
+        try {
+            viewModelProvider.get("key", ViewModel3Factory) { factory, handle -> factory.create(handle) }
+            viewModelProvider.get("key", ViewModel3Factory) { factory, handle -> factory.create(handle) }
+        } finally {
+            InjectedViewModelProvider.setTracer(null)
+        }
+
+        assertEquals(
+            listOf(
+                "InjectedViewModel.restore key",
+                "InjectedViewModel.register key",
+                "InjectedViewModel.create key"
+            ),
+            tracer.sections
+        )
+        assertTrue(tracer.isBalanced)
+    }
+
+    @Test
+    fun `diagnostics lists ViewModels with their recorded metadata`() {
+        val store = ViewModelStore()
+        val viewModelProvider =
+            InjectedViewModelProvider(store, SavedState().savedStateRegistry, null)
+        ViewModelDiagnostics.setRecordingEnabled(true)
+        try {
+            viewModelProvider.get("vm1", ViewModel1Provider)
+            viewModelProvider.get("vm3", ViewModel3Factory) { factory, handle ->
+                factory.create(handle)
+            }.handle["key"] = "value"
+        } finally {
+            ViewModelDiagnostics.setRecordingEnabled(false)
+        }
+        viewModelProvider.get("unrecorded", ViewModel2Provider)
+
+        val entries = ViewModelDiagnostics.inspect(store).associateBy { it.key }
+        assertEquals("get(Provider)", entries.getValue("vm1").source)
+        assertEquals(-1, entries.getValue("vm1").savedStateSize)
+        assertEquals(ViewModel3::class.java, entries.getValue("vm3").viewModelClass)
+        assertEquals("get(SavedStateFactoryCreator)", entries.getValue("vm3").source)
+        assertTrue(entries.getValue("vm3").savedStateSize > 0)
+        assertNull(entries.getValue("unrecorded").source)
+        assertEquals(-1, entries.getValue("unrecorded").createdAtMillis)
+
+        val dump = StringWriter().also { ViewModelDiagnostics.dump(store, PrintWriter(it)) }.toString()
+        assertTrue(dump.contains("vm3 -> ${ViewModel3::class.java.name}, via get(SavedStateFactoryCreator)"))
+    }
+
+    @Test
+    fun `diagnostics lists the ViewModels held for the store`() {
+        val store = ViewModelStore()
+        val provider = InjectedViewModelProvider(store)
+        provider.setExpiry("expiring", 1, TimeUnit.MINUTES)
+        ViewModelDiagnostics.setRecordingEnabled(true)
+        try {
+            provider.get("expiring", ViewModel1Provider)
+            provider.getSoft("soft", ViewModel2Provider)
+            provider.getPool("pool", 2).get(1L, ViewModel1Provider)
+        } finally {
+            ViewModelDiagnostics.setRecordingEnabled(false)
+        }
+
+        val entries = ViewModelDiagnostics.inspect(store).associateBy { it.key }
+        assertEquals("get(Provider)", entries.getValue("expiring").source)
+        assertEquals(ViewModel2::class.java, entries.getValue("soft").viewModelClass)
+        assertEquals(ViewModel1::class.java, entries.getValue(entries.keys.single { it.endsWith(":pool[#1]") }).viewModelClass)
+
+        shadowOf(Looper.getMainLooper()).idleFor(2, TimeUnit.MINUTES)
+        assertTrue(ViewModelDiagnostics.inspect(store).none { it.key == "expiring" })
+        provider.get("expiring", ViewModel1Provider)
+        assertNull(ViewModelDiagnostics.inspect(store).single { it.key == "expiring" }.source)
+    }
+
+    @Test
+    fun `provider listener replaces the global listener`() {
+        val global = RecordingListener()
+        val local = RecordingListener()
+        InjectedViewModelProvider.setGlobalListener(global)
+        try {
+            InjectedViewModelProvider(ViewModelStore()).get(ViewModel1Provider)
+            viewModelProvider.setListener(local)
+            viewModelProvider.get(ViewModel1Provider)
+        } finally {
+            InjectedViewModelProvider.setGlobalListener(null)
+        }
+
+        assertEquals(1, global.events.size)
+        assertEquals(1, local.events.size)
+    }
+
+    @Test
+    fun `global listener is notified of concurrent creation on the creating thread`() {
+        val listener = RecordingListener()
+        val provider = ConcurrentInjectedViewModelProvider(ViewModelStore())
+        InjectedViewModelProvider.setGlobalListener(listener)
+        try {
+            val worker = Thread({ provider.get(ViewModel1Provider) }, "worker")
+            worker.start()
+            worker.join()
+        } finally {
+            InjectedViewModelProvider.setGlobalListener(null)
+        }
+
+        assertEquals(listOf("created ${ViewModel1::class.java.name} -1 worker"), listener.events)
+    }
+
+    @Test
+    fun `child scope returns the ViewModel of its parent scope`() {
+        val parentStore = ViewModelStore()
+        val childStore = ViewModelStore()
+        val parent = InjectedViewModelProvider(parentStore)
+        val child = InjectedViewModelProvider(childStore).withParent(parent)
+        val vm = parent.get(ViewModel1Provider)
+
+        assertSame(vm, child.get(ViewModel1Provider))
+        assertTrue(ViewModelStoreBridge.keys(childStore).isEmpty())
+    }
+
+    @Test
+    fun `child scope creates a ViewModel its parent scope doesn't have`() {
+        val parentStore = ViewModelStore()
+        val childStore = ViewModelStore()
+        val child = InjectedViewModelProvider(childStore).withParent(InjectedViewModelProvider(parentStore))
+
+        val vm = child.get(ViewModel1Provider)
+
+        assertSame(vm, InjectedViewModelProvider(childStore).get(ViewModel1Provider))
+        assertTrue(ViewModelStoreBridge.keys(parentStore).isEmpty())
+    }
+
+    @Test
+    fun `cleared resettable ViewModel is reset and reused by the next get`() {
+        ViewModelRecycler.clear()
+        ViewModelRecycler.resetCounts()
+        val store = ViewModelStore()
+        val vm = InjectedViewModelProvider(store).get(RecyclableViewModel::class.java, RecyclableViewModelProvider)
+        vm.items.add("item")
+
+        store.clear()
+        val recycled = InjectedViewModelProvider(ViewModelStore()).get(RecyclableViewModel::class.java, RecyclableViewModelProvider)
+        val created = InjectedViewModelProvider(ViewModelStore()).get(RecyclableViewModel::class.java, RecyclableViewModelProvider)
+
+        assertSame(vm, recycled)
+        assertTrue(recycled.items.isEmpty())
+        assertTrue(created !== vm)
+        assertEquals(1, ViewModelRecycler.getHitCount())
+        assertEquals(2, ViewModelRecycler.getMissCount())
+        assertEquals(1, ViewModelRecycler.getRecycledCount())
+    }
+
+    @Test
+    fun `recycler keeps at most max pool size instances per class`() {
+        ViewModelRecycler.clear()
+        val stores = List(ViewModelRecycler.DEFAULT_MAX_POOL_SIZE + 1) { ViewModelStore() }
+        for (store in stores) {
+            InjectedViewModelProvider(store).get(RecyclableViewModel::class.java, RecyclableViewModelProvider)
+        }
+
+        stores.forEach { it.clear() }
+
+        assertEquals(ViewModelRecycler.DEFAULT_MAX_POOL_SIZE, ViewModelRecycler.getPoolSize(RecyclableViewModel::class.java))
+    }
+
+    @Test
+    fun `trimmer trims live ViewModels largest first until they are cleared`() {
+        val trimmed = mutableListOf<Long>()
+        val smallStore = ViewModelStore()
+        val largeStore = ViewModelStore()
+        InjectedViewModelProvider(smallStore).get("small", Provider { SizedViewModel(10, trimmed) })
+        InjectedViewModelProvider(largeStore).get("large", Provider { SizedViewModel(1000, trimmed) })
+        assertEquals(2, ViewModelTrimmer.getLiveCount())
+
+        ViewModelTrimmer.trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+        assertEquals(listOf(1000L, 10L), trimmed)
+
+        largeStore.clear()
+        trimmed.clear()
+        ViewModelTrimmer.trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+        assertEquals(listOf(10L), trimmed)
+
+        smallStore.clear()
+        assertEquals(0, ViewModelTrimmer.getLiveCount())
+    }
+
+    @Test
+    fun `trimmer trims pooled and concurrently created ViewModels`() {
+        val trimmed = mutableListOf<Long>()
+        val store = ViewModelStore()
+        val pool = InjectedViewModelProvider(store).getPool("items", 1)
+        pool.get(1L, Provider { SizedViewModel(10, trimmed) })
+        ConcurrentInjectedViewModelProvider(store).get("concurrent", Provider { SizedViewModel(100, trimmed) })
+        assertEquals(2, ViewModelTrimmer.getLiveCount())
+
+        ViewModelTrimmer.trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+        assertEquals(listOf(100L, 10L), trimmed)
+
+        pool.evictAll()
+        assertEquals(1, ViewModelTrimmer.getLiveCount())
+        store.clear()
+        assertEquals(0, ViewModelTrimmer.getLiveCount())
+    }
+
+    @Test
+    fun `ViewModel is cleared once it hasn't been obtained for its expiry`() {
+        val provider = InjectedViewModelProvider(ViewModelStore())
+        provider.setExpiry("vm", 1, TimeUnit.MINUTES)
+        val vm = provider.get("vm", ViewModel1Provider)
+
+        shadowOf(Looper.getMainLooper()).idleFor(40, TimeUnit.SECONDS)
+        assertSame(vm, provider.get("vm", ViewModel1Provider))
+        shadowOf(Looper.getMainLooper()).idleFor(40, TimeUnit.SECONDS)
+        assertFalse(vm.cleared)
+
+        shadowOf(Looper.getMainLooper()).idleFor(30, TimeUnit.SECONDS)
+        assertTrue(vm.cleared)
+        assertEquals(1, provider.expiredCount)
+        assertEquals(mapOf<Class<*>, Int>(ViewModel1::class.java to 1), provider.expiredCounts)
+        assertNotSame(vm, provider.get("vm", ViewModel1Provider))
+    }
+
+    @Test
+    fun `expiring ViewModels are cleared with their store`() {
+        val store = ViewModelStore()
+        val provider = InjectedViewModelProvider(store)
+        provider.setExpiry(ViewModel1::class.java, 1, TimeUnit.MINUTES)
+        val vm = provider.get("vm", ViewModel1Provider)
+
+        store.clear()
+
+        assertTrue(vm.cleared)
+    }
+
+    @Test
+    fun `soft ViewModel is only held by a placeholder in the store`() {
+        val store = ViewModelStore()
+        val savedState = SavedState()
+        val provider = InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+        val vm = provider.getSoft(ViewModel3::class.java, SavedStateFactory { ViewModel3(it) })
+
+        assertSame(vm, provider.getSoft(ViewModel3::class.java, SavedStateFactory { ViewModel3(it) }))
+        assertTrue(ViewModelStoreBridge.keys(store).none { ViewModelStoreBridge.get(store, it) === vm })
+    }
+
+    @Test
+    fun `reclaimed soft ViewModel is created again with its SavedStateHandle`() {
+        val store = ViewModelStore()
+        val savedState = SavedState()
+        val provider = InjectedViewModelProvider(store, savedState.savedStateRegistry, null)
+        val vm = provider.getSoft("vm", SavedStateFactory { ViewModel3(it) })
+        vm.handle.set("key", "value")
+
+        reclaimSoftViewModel(store, "vm")
+        val recreated = provider.getSoft("vm", SavedStateFactory { ViewModel3(it) })
+
+        assertNotSame(vm, recreated)
+        assertEquals("value", recreated.handle.get<String>("key"))
+    }
+
+    @Test
+    fun `soft ViewModel hit reports the ViewModel`() {
+        val store = ViewModelStore()
+        val listener = RecordingListener()
+        val provider = InjectedViewModelProvider(store)
+        provider.setListener(listener)
+
+        provider.getSoft("vm", ViewModel1Provider)
+        provider.getSoft("vm", ViewModel1Provider)
+        reclaimSoftViewModel(store, "vm")
+        provider.getSoft("vm", ViewModel1Provider)
+
+        assertEquals(
+            listOf(
+                "created ${ViewModel1::class.java.name} -1 ${Thread.currentThread().name}",
+                "hit ${ViewModel1::class.java.name}",
+                "created ${ViewModel1::class.java.name} -1 ${Thread.currentThread().name}"
+            ),
+            listener.events
+        )
+    }
+
+    @Test
+    fun `soft ViewModel is cleared with its store`() {
+        val store = ViewModelStore()
+        val vm = InjectedViewModelProvider(store).getSoft("vm", ViewModel1Provider)
+
+        store.clear()
+
+        assertTrue(vm.cleared)
+    }
+
+    @Test
+    fun `typed key returns the ViewModel stored under its key`() {
+        val key = ViewModelKey.of(ViewModel1::class.java)
+        val vm = viewModelProvider.get(key, ViewModel1Provider)
+
+        assertSame(vm, viewModelProvider.get(ViewModel1::class.java, ViewModel1Provider))
+        assertSame(vm, viewModelProvider.get(key, ViewModel1Factory) { it.create("arg") })
+    }
+
+    @Test
+    fun `typed key for a different ViewModel fails with its key`() {
+        viewModelProvider.get("vm", ViewModel2Provider)
+
+        val error = assertFailsWith<ClassCastException> {
+            viewModelProvider.get(ViewModelKey.of("vm", ViewModel1::class.java), ViewModel1Provider)
+        }
+        assertEquals(
+            "ViewModel for key vm is a ${ViewModel2::class.java.name}, not a ${ViewModel1::class.java.name}",
+            error.message
+        )
+    }
+
+    @Test
+    fun `pool evicts and clears the least recently used ViewModel`() {
+        val pool = viewModelProvider.getPool("items", 2)
+        val vm1 = pool.get(1L, ViewModel1Provider)
+        val vm2 = pool.get(2L, ViewModel1Provider)
+        assertSame(vm1, pool.get(1L, ViewModel1Provider))
+
+        pool.get("three", ViewModel1Provider)
+
+        assertEquals(2, pool.size())
+        assertTrue(vm2.cleared)
+        assertTrue(!vm1.cleared)
+        assertSame(pool, viewModelProvider.getPool("items", 2))
+    }
+
+    @Test
+    fun `pool clears its ViewModels with the store`() {
+        val store = ViewModelStore()
+        val vm = InjectedViewModelProvider(store).getPool("items", 10).get(1L, ViewModel1Provider)
+
+        store.clear()
+
+        assertTrue(vm.cleared)
+    }
+
+    @Test
+    fun `pool recycles evicted resettable ViewModels`() {
+        ViewModelRecycler.clear()
+        ViewModelRecycler.resetCounts()
+        val pool = viewModelProvider.getPool("items", 1)
+        val vm1 = pool.get(1L, RecyclableViewModel::class.java, RecyclableViewModelProvider)
+        vm1.items.add("item")
+
+        val vm2 = pool.get(2L, RecyclableViewModel::class.java, RecyclableViewModelProvider)
+        val vm3 = pool.get(3L, RecyclableViewModel::class.java, RecyclableViewModelProvider)
+
+        assertTrue(vm2 !== vm1)
+        assertSame(vm1, vm3)
+        assertTrue(vm3.items.isEmpty())
+        assertEquals(1, ViewModelRecycler.getHitCount())
+        assertEquals(2, ViewModelRecycler.getRecycledCount())
+    }
+
+    @Test
+    fun `concurrent provider creates each ViewModel once across many threads`() {
+        val store = ViewModelStore()
+        val provider = ConcurrentInjectedViewModelProvider(store)
+        val keys = 8
+        val threads = 16
+        val creations = AtomicInteger()
+        val gate = CountDownLatch(1)
+        val results = Collections.synchronizedList(mutableListOf<Pair<Int, ViewModel1>>())
+        val workers = List(threads) { thread ->
+            Thread {
+                gate.await()
+                repeat(1000) { i ->
+                    val key = (thread + i) % keys
+                    val vm = provider.get("key$key", Provider {
+                        creations.incrementAndGet()
+                        Thread.yield()
+                        ViewModel1("$key")
+                    })
+                    results += key to vm
+                }
+            }.apply { start() }
+        }
+        gate.countDown()
+        workers.forEach { it.join() }
+
+        assertEquals(keys, creations.get())
+        for ((key, vms) in results.groupBy({ it.first }, { it.second })) {
+            assertTrue(vms.all { it === vms[0] && it.arg == "$key" })
+        }
+        store.clear()
+        assertTrue(results.all { it.second.cleared })
+    }
+
+    @Test
+    fun `concurrent provider and provider resolve the same ViewModel for a key`() {
+        val store = ViewModelStore()
+        val provider = InjectedViewModelProvider(store)
+        val unused = Provider<ViewModel1> { error("not created") }
+        val before = provider.get("before", Provider { ViewModel1("before") })
+        val concurrentProvider = ConcurrentInjectedViewModelProvider(store)
+        val after = provider.get("after", Provider { ViewModel1("after") })
+
+        assertSame(before, onThread { concurrentProvider.get("before", unused) })
+        assertSame(after, onThread { concurrentProvider.get("after", unused) })
+
+        val background = onThread { concurrentProvider.get("background", Provider { ViewModel1("background") }) }
+        assertSame(background, provider.get("background", unused))
+
+        store.clear()
+        assertTrue(before.cleared && after.cleared && background.cleared)
+    }
+
+    private fun <T> onThread(block: () -> T): T {
+        var result: T? = null
+        Thread { result = block() }.apply {
+            start()
+            join()
+        }
+        @Suppress("UNCHECKED_CAST")
+        return result as T
+    }
+
+    private inline fun <T> callback(crossinline block: (T) -> Unit) = object : ViewModelCallback<T> {
+        override fun onViewModel(viewModel: T) = block(viewModel)
+        override fun onError(error: Throwable) = throw error
+    }
+
+    class RecordingListener : InjectedViewModelListener {
+        val events = mutableListOf<String>()
+
+        override fun onViewModelHit(key: String, viewModel: ViewModel) {
+            events += "hit ${viewModel.javaClass.name}"
+        }
+
+        override fun onViewModelCreated(
+            key: String,
+            viewModel: ViewModel,
+            durationNanos: Long,
+            restoredStateSize: Int,
+            thread: Thread
+        ) {
+            assertTrue(durationNanos >= 0)
+            events += "created ${viewModel.javaClass.name} $restoredStateSize ${thread.name}"
+        }
+    }
+
+    class QueueExecutor : Executor {
+        private val tasks = ArrayDeque<Runnable>()
+
+        override fun execute(command: Runnable) {
+            tasks.add(command)
+        }
+
+        fun runAll() {
+            while (tasks.isNotEmpty()) {
+                tasks.removeFirst().run()
+            }
+        }
+    }
+
+    private fun spilledFiles(): List<File> =
+        tempFolder.root.listFiles()!!.flatMap { it.listFiles()!!.asList() }
+
+    private inline fun allocatedBytes(iterations: Int, block: () -> Unit): Long {
+        val threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        val start = threadBean.getThreadAllocatedBytes(threadId)
+        for (i in 0 until iterations) {
+            block()
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - start
+    }
+
     open class ViewModel1(val arg: String = "") : ViewModel() {
 
         var cleared: Boolean = false
@@ -146,6 +966,27 @@ class InjectedViewModelProviderTest {
 
     class ViewModel2 : ViewModel()
 
+    class RecyclableViewModel : ViewModel(), ResettableViewModel {
+        val items = ArrayList<String>()
+
+        override fun reset() {
+            items.clear()
+        }
+    }
+
+    class SizedViewModel(private val size: Long, private val trimmed: MutableList<Long>) :
+        ViewModel(), TrimmableViewModel {
+        override fun getEstimatedSize() = size
+
+        override fun onTrimMemory(level: Int) {
+            trimmed += size
+        }
+    }
+
+    object RecyclableViewModelProvider : Provider<RecyclableViewModel> {
+        override fun get() = RecyclableViewModel()
+    }
+
     object ViewModel2Provider : Provider<ViewModel2> {
         override fun get() = ViewModel2()
     }
@@ -156,6 +997,8 @@ class InjectedViewModelProviderTest {
         fun create(handle: SavedStateHandle) = ViewModel3(handle)
     }
 
+    class ViewModel4(val handle: LazySavedStateHandle) : ViewModel()
+
     class SavedState(savedState: Bundle? = null) : SavedStateRegistryOwner {
         private val lifecycleRegistry = LifecycleRegistry(this)
         private val controller = SavedStateRegistryController.create(this)
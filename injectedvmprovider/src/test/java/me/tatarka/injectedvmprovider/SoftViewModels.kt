@@ -0,0 +1,11 @@
+package me.tatarka.injectedvmprovider
+
+import androidx.lifecycle.ViewModelStore
+import androidx.lifecycle.ViewModelStoreBridge
+
+/**
+ * Drops the softly held ViewModel for the given key, as if it had been reclaimed.
+ */
+fun reclaimSoftViewModel(store: ViewModelStore, key: String) {
+    (ViewModelStoreBridge.get(store, key) as SoftViewModel).reclaim()
+}